@@ -0,0 +1,226 @@
+package dev.hybridious.utils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for the NSFW detection API, for benchmarking without the real model.
+ *
+ * Serves {@code /predict/batch} (Base64 PNGs in JSON) and {@code /predict/batch/raw} (length
+ * prefixed palette arrays) with the real API's response shape, using only the JDK's HTTP
+ * server. Each request sleeps a fixed latency plus a per-map cost, optionally with jitter, and
+ * fails with a 500 at the configured rate. Verdicts are a hash of each image's bytes, so the
+ * same map always gets the same answer and about {@code nsfwRate} of distinct maps are NSFW.
+ *
+ * Usage: {@code MapClassifierStubServer [--port 5000] [--latency-ms 40] [--per-map-ms 2]
+ * [--jitter-ms 0] [--error-rate 0] [--nsfw-rate 0.1] [--threads 4]}, or
+ * {@code ./gradlew mapFilterStub -Pargs="..."}. Speaks HTTP/1.1 only; the client falls back
+ * from HTTP/2 on its own.
+ */
+public final class MapClassifierStubServer implements AutoCloseable {
+    private static final double DEFAULT_THRESHOLD = 0.5;
+
+    public static final class Options {
+        public int port = 5000;
+        public long latencyMs = 40;
+        public double perMapMs = 2;
+        public long jitterMs;
+        public double errorRate;
+        public double nsfwRate = 0.1;
+        public int threads = 4;
+    }
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public MapClassifierStubServer(Options options) throws IOException {
+        this.options = options;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", options.port), 64);
+        this.executor = Executors.newFixedThreadPool(options.threads);
+        server.setExecutor(executor);
+        server.createContext("/predict/batch", this::handle);
+        server.start();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> options.port = Integer.parseInt(args[++i]);
+                case "--latency-ms" -> options.latencyMs = Long.parseLong(args[++i]);
+                case "--per-map-ms" -> options.perMapMs = Double.parseDouble(args[++i]);
+                case "--jitter-ms" -> options.jitterMs = Long.parseLong(args[++i]);
+                case "--error-rate" -> options.errorRate = Double.parseDouble(args[++i]);
+                case "--nsfw-rate" -> options.nsfwRate = Double.parseDouble(args[++i]);
+                case "--threads" -> options.threads = Math.max(1, Integer.parseInt(args[++i]));
+                default -> {
+                    System.err.println("Usage: MapClassifierStubServer [--port N] [--latency-ms N] [--per-map-ms N] " +
+                            "[--jitter-ms N] [--error-rate R] [--nsfw-rate R] [--threads N]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        MapClassifierStubServer stub = new MapClassifierStubServer(options);
+        System.out.println("[MapFilter] Stub classifier listening on " + stub.url());
+    }
+
+    /**
+     * Base URL to point {@code api-url} at
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\": \"POST only\"}");
+                return;
+            }
+
+            List<byte[]> images;
+            double threshold = DEFAULT_THRESHOLD;
+            if (path.equals("/predict/batch/raw")) {
+                String query = exchange.getRequestURI().getQuery();
+                if (query != null && query.startsWith("threshold=")) {
+                    threshold = Double.parseDouble(query.substring("threshold=".length()));
+                }
+                images = readRaw(exchange.getRequestBody());
+            } else if (path.equals("/predict/batch")) {
+                double[] parsed = {threshold};
+                images = readJson(exchange.getRequestBody(), parsed);
+                threshold = parsed[0];
+            } else {
+                respond(exchange, 404, "{\"error\": \"not found\"}");
+                return;
+            }
+
+            long start = System.nanoTime();
+            simulateInference(images.size());
+            if (options.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < options.errorRate) {
+                respond(exchange, 500, "{\"error\": \"simulated failure\"}");
+                return;
+            }
+            double inferenceMs = (System.nanoTime() - start) / 1e6;
+
+            StringWriter body = new StringWriter();
+            JsonWriter json = new JsonWriter(body);
+            json.beginObject().name("results").beginArray();
+            for (byte[] image : images) {
+                double confidence = confidence(image);
+                boolean isSafe = confidence < threshold;
+                json.beginObject()
+                        .name("is_safe").value(isSafe)
+                        .name("confidence").value(confidence)
+                        .name("class").value(isSafe ? "SFW" : "NSFW")
+                        .endObject();
+            }
+            json.endArray()
+                    .name("batch_inference_time_ms").value(inferenceMs)
+                    .name("avg_time_per_image_ms").value(images.isEmpty() ? 0 : inferenceMs / images.size())
+                    .endObject();
+            json.flush();
+            respond(exchange, 200, body.toString());
+        } catch (IOException | RuntimeException e) {
+            // Bad request bodies must not kill the server thread
+            System.err.println("[MapFilter] Stub request failed: " + e);
+        }
+    }
+
+    private static List<byte[]> readRaw(InputStream body) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(body, 64 * 1024));
+        List<byte[]> images = new ArrayList<>();
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return images;
+            }
+            if (length < 0 || length > 1 << 20) throw new IOException("Bad image length " + length);
+            byte[] image = new byte[length];
+            in.readFully(image);
+            images.add(image);
+        }
+    }
+
+    private static List<byte[]> readJson(InputStream body, double[] threshold) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        List<byte[]> images = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "images" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        // The Base64 text is hashed as-is; decoding would only slow the stub down
+                        images.add(reader.nextString().getBytes(StandardCharsets.ISO_8859_1));
+                    }
+                    reader.endArray();
+                }
+                case "threshold" -> {
+                    if (reader.peek() == JsonToken.NULL) reader.nextNull();
+                    else threshold[0] = reader.nextDouble();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return images;
+    }
+
+    private void simulateInference(int count) {
+        long delayMs = options.latencyMs + Math.round(options.perMapMs * count);
+        if (options.jitterMs > 0) delayMs += ThreadLocalRandom.current().nextLong(options.jitterMs + 1);
+        if (delayMs <= 0) return;
+        try {
+            TimeUnit.MILLISECONDS.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deterministic score in [0, 1): the lowest {@code nsfwRate} fraction of hashes maps above
+     * 0.5, everything else below it
+     */
+    private double confidence(byte[] image) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : image) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        double u = (h >>> 11) * 0x1.0p-53;
+        if (u < options.nsfwRate) return 0.5 + 0.5 * (u / options.nsfwRate);
+        return 0.5 * (u - options.nsfwRate) / (1 - options.nsfwRate);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -0,0 +1,302 @@
+package dev.hybridious.utils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end load benchmark for the map filter pipeline, without a game or the real API.
+ *
+ * Replays synthetic map color arrays through the same stages {@code MapFilterModule} runs: hash,
+ * verdict cache lookup, the pending table, adaptive batching under an in-flight window, the
+ * classifier and writing verdicts back to the cache. The classifier is the HTTP engine against
+ * {@code --api-url}, the local engine with {@code --model}, or otherwise the HTTP engine against a
+ * {@link MapClassifierStubServer} started in-process with the stub options passed through.
+ * Each pass reports maps/sec, time-to-verdict percentiles and allocation rate, followed by the
+ * per-stage {@link MapFilterMetrics}. The second pass finds everything cached, so it measures the
+ * hit path.
+ *
+ * Usage: {@code MapFilterLoadTest [--maps 5000] [--distinct 2000] [--rate 0] [--batch-size 20]
+ * [--in-flight 2] [--target-latency-ms 1000] [--passes 2] [--png] [--api-url URL | --model FILE
+ * [--local-threads N] | stub options]}, or {@code ./gradlew mapFilterLoadTest -Pargs="..."}. A rate of 0 submits
+ * every map at once, like logging in next to a map wall.
+ */
+public final class MapFilterLoadTest {
+    private static final long SEED = 0x5EED;
+
+    private MapFilterLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maps = 5000;
+        int distinct = 2000;
+        int rate = 0;
+        int batchSize = 20;
+        int inFlight = 2;
+        int targetLatency = 1000;
+        int passes = 2;
+        boolean raw = true;
+        String apiUrl = null;
+        Path model = null;
+        int localThreads = LocalMapClassifier.spareCores();
+        MapClassifierStubServer.Options stubOptions = new MapClassifierStubServer.Options();
+        stubOptions.port = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--maps" -> maps = Integer.parseInt(args[++i]);
+                case "--distinct" -> distinct = Integer.parseInt(args[++i]);
+                case "--rate" -> rate = Integer.parseInt(args[++i]);
+                case "--batch-size" -> batchSize = Math.max(1, Integer.parseInt(args[++i]));
+                case "--in-flight" -> inFlight = Math.max(1, Integer.parseInt(args[++i]));
+                case "--target-latency-ms" -> targetLatency = Integer.parseInt(args[++i]);
+                case "--passes" -> passes = Math.max(1, Integer.parseInt(args[++i]));
+                case "--png" -> raw = false;
+                case "--api-url" -> apiUrl = args[++i];
+                case "--model" -> model = Path.of(args[++i]);
+                case "--local-threads" -> localThreads = Math.max(1, Integer.parseInt(args[++i]));
+                case "--latency-ms" -> stubOptions.latencyMs = Long.parseLong(args[++i]);
+                case "--per-map-ms" -> stubOptions.perMapMs = Double.parseDouble(args[++i]);
+                case "--jitter-ms" -> stubOptions.jitterMs = Long.parseLong(args[++i]);
+                case "--error-rate" -> stubOptions.errorRate = Double.parseDouble(args[++i]);
+                case "--nsfw-rate" -> stubOptions.nsfwRate = Double.parseDouble(args[++i]);
+                case "--threads" -> stubOptions.threads = Math.max(1, Integer.parseInt(args[++i]));
+                default -> {
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+
+        MapFilterLog.setLevel(MapFilterLog.Level.Error);
+        byte[][] contents = syntheticMaps(Math.max(1, Math.min(distinct, maps)));
+        Path dir = Files.createTempDirectory("mapfilter-load");
+
+        MapClassifierStubServer stub = apiUrl == null && model == null ? new MapClassifierStubServer(stubOptions) : null;
+        MapHashCache cache = new MapHashCache(dir.toString());
+        MapClassifier.Engine engine = model != null ? MapClassifier.Engine.Local : MapClassifier.Engine.Http;
+        try (MapClassifier classifier = MapClassifier.create(engine, stub != null ? stub.url() : apiUrl, raw,
+                model, localThreads)) {
+            String target = model != null ? "local model " + model.getFileName() + " on " + localThreads + " threads"
+                    : (stub != null ? "stub " + stub.url() : apiUrl) + (raw ? ", raw upload" : ", PNG upload");
+            System.out.println("[MapFilter] " + maps + " maps (" + contents.length + " distinct) against " + target);
+
+            Run run = new Run(cache, classifier, batchSize, inFlight, targetLatency);
+            for (int pass = 1; pass <= passes; pass++) {
+                MapFilterMetrics.reset();
+                run.pass(pass, maps, contents, rate);
+                MapFilterMetrics.report().forEach(line -> System.out.println("  " + line));
+            }
+            run.close();
+        } finally {
+            cache.close();
+            if (stub != null) stub.close();
+            deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * Map art is mostly flat regions, which matters for PNG size; use 8x8 blocks of one color
+     */
+    private static byte[][] syntheticMaps(int count) {
+        Random random = new Random(SEED);
+        byte[][] maps = new byte[count][MapPalette.MAP_PIXELS];
+        for (byte[] colors : maps) {
+            for (int by = 0; by < MapPalette.MAP_SIZE; by += 8) {
+                for (int bx = 0; bx < MapPalette.MAP_SIZE; bx += 8) {
+                    byte color = (byte) (4 + random.nextInt(240));
+                    for (int y = by; y < by + 8; y++) {
+                        Arrays.fill(colors, y * MapPalette.MAP_SIZE + bx, y * MapPalette.MAP_SIZE + bx + 8, color);
+                    }
+                }
+            }
+        }
+        return maps;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private record Pending(int mapId, MapHashKey hash, byte[] colors, long submittedAt) {
+    }
+
+    private static final class Run {
+        private final MapHashCache cache;
+        private final MapClassifier classifier;
+        private final int batchSize;
+        private final int targetLatency;
+        private final Semaphore window;
+        private final ExecutorService executor;
+        private final AdaptiveBatchController controller = new AdaptiveBatchController();
+        private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+        private final MapSessionTable session = new MapSessionTable();
+        private final Map<MapHashKey, CompletableFuture<MapClassifier.Result>> classified = new ConcurrentHashMap<>();
+        private final LatencyHistogram timeToVerdict = new LatencyHistogram("time to verdict");
+        private final AtomicInteger blocked = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private CountDownLatch remaining;
+        private int nextMapId;
+
+        Run(MapHashCache cache, MapClassifier classifier, int batchSize, int inFlight, int targetLatency) {
+            this.cache = cache;
+            this.classifier = classifier;
+            this.batchSize = batchSize;
+            this.targetLatency = targetLatency;
+            this.window = new Semaphore(inFlight);
+            this.executor = Executors.newFixedThreadPool(inFlight);
+        }
+
+        void pass(int pass, int maps, byte[][] contents, int rate) throws InterruptedException {
+            timeToVerdict.reset();
+            blocked.set(0);
+            failed.set(0);
+            remaining = new CountDownLatch(maps);
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+            Thread dispatcher = new Thread(this::dispatch, "mapfilter-load-dispatch");
+            dispatcher.setDaemon(true);
+
+            long allocatedBefore = threads.getTotalThreadAllocatedBytes();
+            long start = System.nanoTime();
+            dispatcher.start();
+            for (int i = 0; i < maps; i++) {
+                if (rate > 0) {
+                    long due = start + i * 1_000_000_000L / rate;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                submit(nextMapId++, contents[i % contents.length]);
+            }
+            remaining.await();
+            long elapsed = System.nanoTime() - start;
+            long allocated = threads.getTotalThreadAllocatedBytes() - allocatedBefore;
+            dispatcher.interrupt();
+
+            double seconds = elapsed / 1e9;
+            System.out.printf("[MapFilter] Pass %d: %d maps in %.2fs = %.0f maps/s | time to verdict p50=%.1fms " +
+                            "p99=%.1fms max=%.1fms | %d blocked, %d failed | allocated %.1f MB/s (%.1f KB/map)%n",
+                    pass, maps, seconds, maps / seconds,
+                    timeToVerdict.percentile(0.50) / 1e6, timeToVerdict.percentile(0.99) / 1e6,
+                    timeToVerdict.max() / 1e6, blocked.get(), failed.get(),
+                    allocated / 1e6 / seconds, allocated / 1024.0 / maps);
+        }
+
+        /**
+         * What the render path does on first sight of a map
+         */
+        private void submit(int mapId, byte[] colors) {
+            long submittedAt = System.nanoTime();
+            MapHashKey hash = MapHashCache.hashColors(colors);
+            session.setHash(mapId, hash);
+            Boolean isSafe = cache.isSafe(hash);
+            if (isSafe != null) {
+                verdict(mapId, isSafe, submittedAt);
+                return;
+            }
+            if (session.markPending(mapId)) {
+                MapFilterMetrics.MAPS_QUEUED.increment();
+                queue.add(new Pending(mapId, hash, colors, submittedAt));
+            }
+        }
+
+        /**
+         * The batch thread: whenever the window has room, send what is queued, sized the way
+         * adaptive batching would size it
+         */
+        private void dispatch() {
+            try {
+                while (true) {
+                    Pending first = queue.take();
+                    window.acquire();
+                    List<Pending> batch = new ArrayList<>();
+                    batch.add(first);
+                    int limit = controller.batchSize(batchSize, targetLatency);
+                    queue.drainTo(batch, limit - 1);
+                    for (Pending pending : batch) {
+                        MapFilterMetrics.QUEUE_WAIT.recordSince(pending.submittedAt);
+                    }
+                    executor.execute(() -> {
+                        try {
+                            validate(batch);
+                        } finally {
+                            window.release();
+                        }
+                    });
+                }
+            } catch (InterruptedException e) {
+                // Pass finished
+            }
+        }
+
+        private void validate(List<Pending> batch) {
+            // Each image once, like the module: identical maps wait on the first one's request
+            Map<Integer, byte[]> maps = new HashMap<>();
+            List<Pending> owners = new ArrayList<>();
+            Map<Integer, CompletableFuture<MapClassifier.Result>> requests = new HashMap<>();
+            for (Pending pending : batch) {
+                CompletableFuture<MapClassifier.Result> request = new CompletableFuture<>();
+                CompletableFuture<MapClassifier.Result> existing = classified.putIfAbsent(pending.hash, request);
+                if (existing != null) {
+                    MapFilterMetrics.MAPS_SHARED.increment();
+                    existing.whenComplete((result, error) -> settle(pending, result));
+                    continue;
+                }
+                owners.add(pending);
+                requests.put(pending.mapId, request);
+                maps.put(pending.mapId, pending.colors);
+            }
+            if (maps.isEmpty()) return;
+
+            Map<Integer, MapClassifier.Result> results = Map.of();
+            MapFilterMetrics.BATCHES_SENT.increment();
+            try {
+                long start = System.nanoTime();
+                results = classifier.classify(maps, null);
+                controller.record(maps.size(), (System.nanoTime() - start) / 1e6);
+            } catch (IOException e) {
+                // Each owner, and each shared map waiting on one, is counted as failed by settle
+                MapFilterMetrics.BATCHES_FAILED.increment();
+            }
+
+            for (Pending pending : owners) {
+                MapClassifier.Result result = results.get(pending.mapId);
+                if (result != null) {
+                    cache.cache(pending.hash, result.isSafe, result.confidence, result.classification);
+                } else {
+                    classified.remove(pending.hash, requests.get(pending.mapId));
+                }
+                settle(pending, result);
+                requests.get(pending.mapId).complete(result);
+            }
+        }
+
+        private void settle(Pending pending, MapClassifier.Result result) {
+            // Fail closed, like the module's Block policy
+            if (result == null) failed.incrementAndGet();
+            verdict(pending.mapId, result != null && result.isSafe, pending.submittedAt);
+            session.clearPending(pending.mapId);
+        }
+
+        private void verdict(int mapId, boolean isSafe, long submittedAt) {
+            session.setVerdict(mapId, isSafe);
+            if (!isSafe) blocked.incrementAndGet();
+            timeToVerdict.recordSince(submittedAt);
+            remaining.countDown();
+        }
+
+        void close() {
+            executor.shutdownNow();
+        }
+    }
+}
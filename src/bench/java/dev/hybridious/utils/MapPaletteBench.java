@@ -0,0 +1,197 @@
+package dev.hybridious.utils;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Benchmark for {@link MapPalette}: rendering a batch of maps through the lookup table and the
+ * image's backing array, against the per-pixel conversion it replaced (a switch and an int[]
+ * allocation per pixel, double shading and column-major {@code setRGB}).
+ *
+ * Before timing, every map is also rendered pixel by pixel through {@link MapPalette#rgb} and
+ * {@code setRGB}, and the fast path must match it exactly, so the raster write is checked too.
+ * The legacy conversion keeps the base colors it shipped with, which were offset from
+ * Minecraft's ids, so only its speed is compared.
+ *
+ * Usage: {@code MapPaletteBench [--maps 20] [--iterations 200] [--warmup 50]}, or
+ * {@code ./gradlew mapPaletteBench -Pargs="..."}.
+ */
+public final class MapPaletteBench {
+    private static final long SEED = 0x5EED;
+    private static final int SIZE = MapPalette.MAP_SIZE;
+
+    private MapPaletteBench() {
+    }
+
+    public static void main(String[] args) {
+        int maps = 20;
+        int iterations = 200;
+        int warmup = 50;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--maps" -> maps = Math.max(1, Integer.parseInt(args[++i]));
+                case "--iterations" -> iterations = Math.max(1, Integer.parseInt(args[++i]));
+                case "--warmup" -> warmup = Math.max(0, Integer.parseInt(args[++i]));
+                default -> {
+                    System.err.println("Usage: MapPaletteBench [--maps N] [--iterations N] [--warmup N]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        Random random = new Random(SEED);
+        byte[][] batch = new byte[maps][MapPalette.MAP_PIXELS];
+        for (byte[] colors : batch) random.nextBytes(colors);
+
+        for (int i = 0; i < batch.length; i++) {
+            if (!sameRgb(MapPalette.toImage(batch[i]), reference(batch[i]))) {
+                System.err.println("[MapFilter] MapPalette.toImage differs from the per-pixel reference for map " + i);
+                System.exit(1);
+            }
+        }
+
+        long[] legacy = new long[iterations];
+        long[] table = new long[iterations];
+        long sink = 0;
+        for (int i = 0; i < warmup + iterations; i++) {
+            long start = System.nanoTime();
+            for (byte[] colors : batch) sink += legacyImage(colors).getRGB(0, 0);
+            long mid = System.nanoTime();
+            for (byte[] colors : batch) sink += MapPalette.toImage(colors).getRGB(0, 0);
+            long end = System.nanoTime();
+            if (i >= warmup) {
+                legacy[i - warmup] = mid - start;
+                table[i - warmup] = end - mid;
+            }
+        }
+
+        Arrays.sort(legacy);
+        Arrays.sort(table);
+        System.out.printf("[MapFilter] %d-map batch, %d iterations: legacy p50=%.2fms p90=%.2fms | " +
+                        "table p50=%.2fms p90=%.2fms | %.1fx at p50 (checksum %d)%n",
+                maps, iterations, legacy[iterations / 2] / 1e6, legacy[iterations * 9 / 10] / 1e6,
+                table[iterations / 2] / 1e6, table[iterations * 9 / 10] / 1e6,
+                (double) legacy[iterations / 2] / Math.max(1, table[iterations / 2]), sink);
+    }
+
+    // TYPE_INT_RGB ignores the alpha byte, which setRGB leaves out and the table writes opaque
+    private static boolean sameRgb(BufferedImage a, BufferedImage b) {
+        int[] x = MapPalette.pixels(a);
+        int[] y = MapPalette.pixels(b);
+        for (int i = 0; i < x.length; i++) {
+            if ((x[i] & 0xFFFFFF) != (y[i] & 0xFFFFFF)) return false;
+        }
+        return x.length == y.length;
+    }
+
+    private static BufferedImage reference(byte[] colors) {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                image.setRGB(x, z, MapPalette.rgb(colors[x + z * SIZE]));
+            }
+        }
+        return image;
+    }
+
+    // The conversion BatchMapValidator used before MapPalette, kept verbatim as the baseline
+
+    private static BufferedImage legacyImage(byte[] colors) {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                int index = x + z * SIZE;
+                image.setRGB(x, z, legacyColor(colors[index]));
+            }
+        }
+        return image;
+    }
+
+    private static int legacyColor(byte colorByte) {
+        int colorId = colorByte & 0xFF;
+        if (colorId < 4) return 0x000000;
+
+        int baseColorIndex = colorId >> 2;
+        int shade = colorId & 0x03;
+
+        int[] baseColor = legacyBaseColor(baseColorIndex);
+        double multiplier = switch (shade) {
+            case 0 -> 0.71;
+            case 1 -> 0.86;
+            case 2 -> 1.0;
+            case 3 -> 0.53;
+            default -> 1.0;
+        };
+
+        int r = (int) (baseColor[0] * multiplier);
+        int g = (int) (baseColor[1] * multiplier);
+        int b = (int) (baseColor[2] * multiplier);
+
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private static int[] legacyBaseColor(int index) {
+        return switch (index) {
+            case 4 -> new int[]{127, 178, 56};
+            case 5 -> new int[]{247, 233, 163};
+            case 6 -> new int[]{199, 199, 199};
+            case 7 -> new int[]{255, 0, 0};
+            case 8 -> new int[]{160, 160, 255};
+            case 9 -> new int[]{167, 167, 167};
+            case 10 -> new int[]{0, 124, 0};
+            case 11 -> new int[]{255, 255, 255};
+            case 12 -> new int[]{164, 168, 184};
+            case 13 -> new int[]{151, 109, 77};
+            case 14 -> new int[]{112, 112, 112};
+            case 15 -> new int[]{64, 64, 255};
+            case 16 -> new int[]{143, 119, 72};
+            case 17 -> new int[]{255, 252, 245};
+            case 18 -> new int[]{216, 127, 51};
+            case 19 -> new int[]{178, 76, 216};
+            case 20 -> new int[]{102, 153, 216};
+            case 21 -> new int[]{229, 229, 51};
+            case 22 -> new int[]{127, 204, 25};
+            case 23 -> new int[]{242, 127, 165};
+            case 24 -> new int[]{76, 76, 76};
+            case 25 -> new int[]{153, 153, 153};
+            case 26 -> new int[]{76, 127, 153};
+            case 27 -> new int[]{127, 63, 178};
+            case 28 -> new int[]{51, 76, 178};
+            case 29 -> new int[]{102, 76, 51};
+            case 30 -> new int[]{102, 127, 51};
+            case 31 -> new int[]{153, 51, 51};
+            case 32 -> new int[]{25, 25, 25};
+            case 33 -> new int[]{250, 238, 77};
+            case 34 -> new int[]{92, 219, 213};
+            case 35 -> new int[]{74, 128, 255};
+            case 36 -> new int[]{0, 217, 58};
+            case 37 -> new int[]{129, 86, 49};
+            case 38 -> new int[]{112, 2, 0};
+            case 39 -> new int[]{209, 177, 161};
+            case 40 -> new int[]{159, 82, 36};
+            case 41 -> new int[]{149, 87, 108};
+            case 42 -> new int[]{112, 108, 138};
+            case 43 -> new int[]{186, 133, 36};
+            case 44 -> new int[]{103, 117, 53};
+            case 45 -> new int[]{160, 77, 78};
+            case 46 -> new int[]{57, 41, 35};
+            case 47 -> new int[]{135, 107, 98};
+            case 48 -> new int[]{87, 92, 92};
+            case 49 -> new int[]{122, 73, 88};
+            case 50 -> new int[]{76, 62, 92};
+            case 51 -> new int[]{76, 50, 35};
+            case 52 -> new int[]{76, 82, 42};
+            case 53 -> new int[]{142, 60, 46};
+            case 54 -> new int[]{37, 22, 16};
+            case 55 -> new int[]{189, 48, 49};
+            case 56 -> new int[]{148, 63, 97};
+            case 57 -> new int[]{92, 25, 29};
+            case 58 -> new int[]{22, 126, 134};
+            case 59 -> new int[]{58, 142, 140};
+            case 60 -> new int[]{86, 44, 62};
+            case 61 -> new int[]{20, 180, 133};
+            default -> new int[]{0, 0, 0};
+        };
+    }
+}
@@ -0,0 +1,292 @@
+package dev.hybridious.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks and benchmarks {@link MapSessionTable} against the three {@code ConcurrentHashMap}s it
+ * replaced (verdicts, hashes and pending maps keyed by boxed Integers).
+ *
+ * Before timing it runs two checks and exits with status 1 if either fails:
+ * <ul>
+ *     <li>random single-threaded operations, including wholesale resets and enough IDs to grow
+ *     every stripe, mirrored into a {@link HashMap} reference and compared after each one</li>
+ *     <li>writer threads on disjoint IDs against a reader that must only ever see states the
+ *     writers could have produced, then a comparison of the final state</li>
+ * </ul>
+ * The benchmark then does what the render thread does per framed map, a verdict, pending and hash
+ * lookup, over a fixed set of IDs, and reports ns per map and bytes allocated per lookup.
+ *
+ * Usage: {@code MapSessionTableBench [--maps 1000] [--rounds 20000] [--operations 200000]}, or
+ * {@code ./gradlew mapSessionTableBench -Pargs="..."}.
+ */
+public final class MapSessionTableBench {
+    private static final long SEED = 0x5EED;
+
+    private MapSessionTableBench() {
+    }
+
+    // What the table should hold for one map
+    private static final class Expected {
+        int verdict = MapSessionTable.UNKNOWN;
+        boolean pending;
+        MapHashKey hash;
+        long decidedAt;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int maps = 1000;
+        int rounds = 20_000;
+        int operations = 200_000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--maps" -> maps = Math.max(1, Integer.parseInt(args[++i]));
+                case "--rounds" -> rounds = Math.max(1, Integer.parseInt(args[++i]));
+                case "--operations" -> operations = Math.max(1, Integer.parseInt(args[++i]));
+                default -> {
+                    System.err.println("Usage: MapSessionTableBench [--maps N] [--rounds N] [--operations N]");
+                    System.exit(2);
+                }
+            }
+        }
+
+        String failure = checkAgainstReference(operations);
+        if (failure == null) failure = checkConcurrent();
+        if (failure != null) {
+            System.err.println("[MapFilter] MapSessionTable check failed: " + failure);
+            System.exit(1);
+        }
+        System.out.println("[MapFilter] MapSessionTable matches the HashMap reference (" + operations +
+                " operations) and the concurrent check");
+
+        benchmark(maps, rounds);
+    }
+
+    /**
+     * @return a description of the first mismatch, or null
+     */
+    private static String checkAgainstReference(int operations) {
+        Random random = new Random(SEED);
+        MapSessionTable table = new MapSessionTable();
+        Map<Integer, Expected> reference = new HashMap<>();
+        // Wide enough to grow every stripe well past its initial capacity; negative IDs too
+        int range = 20_000;
+
+        for (int op = 0; op < operations; op++) {
+            int mapId = random.nextInt(range) - range / 4;
+            Expected expected = reference.computeIfAbsent(mapId, id -> new Expected());
+            int choice = random.nextInt(1000);
+            String name;
+            if (choice < 250) {
+                boolean isSafe = random.nextBoolean();
+                long decidedAt = random.nextBoolean() ? 0 : 1 + random.nextInt(1 << 20);
+                table.setVerdict(mapId, isSafe, decidedAt);
+                expected.verdict = isSafe ? MapSessionTable.SAFE : MapSessionTable.BLOCKED;
+                expected.decidedAt = decidedAt;
+                name = "setVerdict";
+            } else if (choice < 350) {
+                table.clearVerdict(mapId);
+                expected.verdict = MapSessionTable.UNKNOWN;
+                name = "clearVerdict";
+            } else if (choice < 550) {
+                boolean wasPending = table.markPending(mapId);
+                if (wasPending == expected.pending) return "markPending(" + mapId + ") returned " + wasPending;
+                expected.pending = true;
+                name = "markPending";
+            } else if (choice < 700) {
+                table.clearPending(mapId);
+                expected.pending = false;
+                name = "clearPending";
+            } else if (choice < 850) {
+                MapHashKey hash = new MapHashKey(random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong());
+                table.setHash(mapId, hash);
+                expected.hash = hash;
+                name = "setHash";
+            } else if (choice < 996) {
+                long taken = table.takeDecidedAt(mapId);
+                if (taken != expected.decidedAt) {
+                    return "takeDecidedAt(" + mapId + ") = " + taken + ", expected " + expected.decidedAt;
+                }
+                expected.decidedAt = 0;
+                name = "takeDecidedAt";
+            } else if (choice < 998) {
+                table.resetVerdicts();
+                for (Expected e : reference.values()) e.verdict = MapSessionTable.UNKNOWN;
+                name = "resetVerdicts";
+            } else if (choice < 999) {
+                table.clearVerdicts();
+                for (Expected e : reference.values()) {
+                    e.verdict = MapSessionTable.UNKNOWN;
+                    e.pending = false;
+                }
+                name = "clearVerdicts";
+            } else {
+                table.clear();
+                reference.clear();
+                name = "clear";
+            }
+
+            String mismatch = compare(table, mapId, reference.get(mapId));
+            if (mismatch != null) return "after " + name + " at operation " + op + ": " + mismatch;
+        }
+
+        for (int mapId = -range / 4; mapId < range - range / 4; mapId++) {
+            String mismatch = compare(table, mapId, reference.get(mapId));
+            if (mismatch != null) return "final state: " + mismatch;
+        }
+        return null;
+    }
+
+    private static String compare(MapSessionTable table, int mapId, Expected expected) {
+        int verdict = expected != null ? expected.verdict : MapSessionTable.UNKNOWN;
+        boolean pending = expected != null && expected.pending;
+        MapHashKey hash = expected != null ? expected.hash : null;
+
+        if (table.verdict(mapId) != verdict) {
+            return "verdict(" + mapId + ") = " + table.verdict(mapId) + ", expected " + verdict;
+        }
+        if (table.isPending(mapId) != pending) {
+            return "isPending(" + mapId + ") = " + table.isPending(mapId) + ", expected " + pending;
+        }
+        if (!Objects.equals(table.hash(mapId), hash)) {
+            return "hash(" + mapId + ") differs";
+        }
+        return null;
+    }
+
+    /**
+     * Writers each own a slice of IDs and step every map through pending, hashed, verdict and
+     * cleared pending. A reader sweeps all IDs meanwhile: a verdict must be UNKNOWN or the one the
+     * owner writes, and a hash null or the owner's, never another map's.
+     *
+     * @return a description of the first violation, or null
+     */
+    private static String checkConcurrent() throws InterruptedException {
+        int writers = 3;
+        int perWriter = 5_000;
+        MapSessionTable table = new MapSessionTable();
+        MapHashKey[] hashes = new MapHashKey[writers * perWriter];
+        for (int mapId = 0; mapId < hashes.length; mapId++) hashes[mapId] = new MapHashKey(mapId, ~mapId, mapId * 31L, 7);
+
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(writers);
+
+        Thread reader = new Thread(() -> {
+            while (writing.get() && failure.get() == null) {
+                for (int mapId = 0; mapId < hashes.length; mapId++) {
+                    int verdict = table.verdict(mapId);
+                    boolean expectedSafe = mapId % 3 != 0;
+                    int written = expectedSafe ? MapSessionTable.SAFE : MapSessionTable.BLOCKED;
+                    if (verdict != MapSessionTable.UNKNOWN && verdict != written) {
+                        failure.compareAndSet(null, "reader saw verdict " + verdict + " for map " + mapId);
+                    }
+                    MapHashKey hash = table.hash(mapId);
+                    if (hash != null && hash != hashes[mapId]) {
+                        failure.compareAndSet(null, "reader saw another map's hash for map " + mapId);
+                    }
+                }
+            }
+        }, "session-table-reader");
+        reader.start();
+
+        for (int w = 0; w < writers; w++) {
+            int first = w * perWriter;
+            Thread writer = new Thread(() -> {
+                for (int mapId = first; mapId < first + perWriter; mapId++) {
+                    table.markPending(mapId);
+                    table.setHash(mapId, hashes[mapId]);
+                    table.setVerdict(mapId, mapId % 3 != 0);
+                    table.clearPending(mapId);
+                }
+                done.countDown();
+            }, "session-table-writer-" + w);
+            writer.start();
+        }
+        done.await();
+        writing.set(false);
+        reader.join();
+        if (failure.get() != null) return failure.get();
+
+        for (int mapId = 0; mapId < hashes.length; mapId++) {
+            int written = mapId % 3 != 0 ? MapSessionTable.SAFE : MapSessionTable.BLOCKED;
+            if (table.verdict(mapId) != written || table.isPending(mapId) || table.hash(mapId) != hashes[mapId]) {
+                return "final state of map " + mapId + " is wrong after concurrent writes";
+            }
+        }
+        return null;
+    }
+
+    private static void benchmark(int maps, int rounds) {
+        Random random = new Random(SEED);
+        MapSessionTable table = new MapSessionTable();
+        Map<Integer, Boolean> verdicts = new ConcurrentHashMap<>();
+        Map<Integer, MapHashKey> hashes = new ConcurrentHashMap<>();
+        Map<Integer, Boolean> pending = new ConcurrentHashMap<>();
+
+        // Map IDs as a server hands them out: mostly sequential, some far apart
+        int[] mapIds = new int[maps];
+        for (int i = 0; i < maps; i++) {
+            int mapId = random.nextInt(10) == 0 ? random.nextInt(1 << 20) : i;
+            mapIds[i] = mapId;
+            MapHashKey hash = new MapHashKey(random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong());
+            boolean isSafe = random.nextBoolean();
+            table.setHash(mapId, hash);
+            hashes.put(mapId, hash);
+            if (random.nextInt(4) == 0) {
+                table.markPending(mapId);
+                pending.put(mapId, Boolean.TRUE);
+            } else {
+                table.setVerdict(mapId, isSafe);
+                verdicts.put(mapId, isSafe);
+            }
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sink = 0;
+        long mapsBest = Long.MAX_VALUE, tableBest = Long.MAX_VALUE;
+        long mapsAllocated = 0, tableAllocated = 0;
+        // Alternate so both see the same JIT and GC conditions; keep each one's best pass
+        for (int pass = 0; pass < 5; pass++) {
+            long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (int mapId : mapIds) {
+                    Boolean verdict = verdicts.get(mapId);
+                    if (verdict != null && verdict) sink++;
+                    if (pending.containsKey(mapId)) sink++;
+                    if (hashes.get(mapId) != null) sink++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            mapsAllocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            mapsBest = Math.min(mapsBest, elapsed);
+
+            allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (int mapId : mapIds) {
+                    if (table.verdict(mapId) == MapSessionTable.SAFE) sink++;
+                    if (table.isPending(mapId)) sink++;
+                    if (table.hash(mapId) != null) sink++;
+                }
+            }
+            elapsed = System.nanoTime() - start;
+            tableAllocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            tableBest = Math.min(tableBest, elapsed);
+        }
+
+        double lookups = (double) rounds * maps;
+        System.out.printf("[MapFilter] %d maps x %d rounds: three ConcurrentHashMaps %.1f ns/map, %.1f B/lookup | " +
+                        "MapSessionTable %.1f ns/map, %.1f B/lookup (checksum %d)%n",
+                maps, rounds, mapsBest / lookups, mapsAllocated / (lookups * 3),
+                tableBest / lookups, tableAllocated / (lookups * 3), sink);
+    }
+}
@@ -2,6 +2,7 @@ package dev.hybridious.commands;
 
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import dev.hybridious.modules.MapFilterModule;
+import dev.hybridious.utils.MapFilterMetrics;
 import meteordevelopment.meteorclient.commands.Command;
 import meteordevelopment.meteorclient.systems.modules.Modules;
 import net.minecraft.client.MinecraftClient;
@@ -31,6 +32,19 @@ public class MapFilterCommand extends Command {
                             info("Cache Stats: " + module.getCacheStats());
                             return SINGLE_SUCCESS;
                         }))
+                .then(literal("perf")
+                        .executes(context -> {
+                            MapFilterModule module = Modules.get().get(MapFilterModule.class);
+                            if (module != null) info(module.getClassifierStatus());
+                            MapFilterMetrics.report().forEach(line -> info(line));
+                            return SINGLE_SUCCESS;
+                        })
+                        .then(literal("reset")
+                                .executes(context -> {
+                                    MapFilterMetrics.reset();
+                                    info("Perf metrics reset");
+                                    return SINGLE_SUCCESS;
+                                })))
                 .then(literal("clear")
                         .executes(context -> {
                             MapFilterModule module = Modules.get().get(MapFilterModule.class);
@@ -42,6 +56,43 @@ public class MapFilterCommand extends Command {
                             info("Hash cache cleared");
                             return SINGLE_SUCCESS;
                         }))
+                .then(literal("export")
+                        .executes(context -> {
+                            MapFilterModule module = Modules.get().get(MapFilterModule.class);
+                            if (module == null || !module.exportHashCache()) {
+                                error("Cache not initialized");
+                                return SINGLE_SUCCESS;
+                            }
+                            info("Hash cache exported to sfw_maps.json / nsfw_maps.json");
+                            return SINGLE_SUCCESS;
+                        }))
+                .then(literal("import")
+                        .executes(context -> {
+                            MapFilterModule module = Modules.get().get(MapFilterModule.class);
+                            int imported = module == null ? -1 : module.importHashCache();
+                            if (imported < 0) {
+                                error("Cache not initialized");
+                                return SINGLE_SUCCESS;
+                            }
+                            info("Imported " + imported + " entries from sfw_maps.json / nsfw_maps.json");
+                            return SINGLE_SUCCESS;
+                        }))
+                .then(literal("bundle")
+                        .then(literal("export")
+                                .executes(context -> exportBundle(false)))
+                        .then(literal("delta")
+                                .executes(context -> exportBundle(true)))
+                        .then(literal("import")
+                                .executes(context -> {
+                                    MapFilterModule module = Modules.get().get(MapFilterModule.class);
+                                    int changed = module == null ? -1 : module.importBundles();
+                                    if (changed < 0) {
+                                        error("Cache not initialized");
+                                        return SINGLE_SUCCESS;
+                                    }
+                                    info("Merged " + changed + " verdicts from bundles");
+                                    return SINGLE_SUCCESS;
+                                })))
                 .then(literal("whitelist")
                         .executes(context -> {
                             MapFilterModule module = Modules.get().get(MapFilterModule.class);
@@ -86,6 +137,17 @@ public class MapFilterCommand extends Command {
                         }));
     }
 
+    private int exportBundle(boolean delta) {
+        MapFilterModule module = Modules.get().get(MapFilterModule.class);
+        String name = module == null ? null : module.exportBundle(delta);
+        if (name == null) {
+            error("Bundle export failed");
+            return SINGLE_SUCCESS;
+        }
+        info("Verdicts exported to bundles/" + name);
+        return SINGLE_SUCCESS;
+    }
+
     private Integer getHeldMapId() {
         MinecraftClient client = MinecraftClient.getInstance();
         PlayerEntity player = client.player;
@@ -1,7 +1,6 @@
 package dev.hybridious.mixin;
 
 import dev.hybridious.modules.MapFilterModule;
-import meteordevelopment.meteorclient.systems.modules.Modules;
 import net.minecraft.client.render.VertexConsumerProvider;
 import net.minecraft.client.render.item.HeldItemRenderer;
 import net.minecraft.client.util.math.MatrixStack;
@@ -25,7 +24,7 @@ public class HeldItemRendererMixin {
     private void onRenderFirstPersonMap(MatrixStack matrices, VertexConsumerProvider vertexConsumers,
                                         int swingProgress, ItemStack map, CallbackInfo ci) {
         try {
-            MapFilterModule module = Modules.get().get(MapFilterModule.class);
+            MapFilterModule module = MapFilterModule.get();
 
             if (module != null && module.isActive()) {
                 MapIdComponent mapId = map.get(DataComponentTypes.MAP_ID);
@@ -33,7 +32,7 @@ public class HeldItemRendererMixin {
                 if (mapId != null) {
                     int id = mapId.id();
 
-                    if (!module.shouldRenderMap(id)) {
+                    if (!module.shouldRenderHeldMap(id)) {
                         ci.cancel();
                     }
                 }
@@ -1,7 +1,8 @@
 package dev.hybridious.mixin;
 
 import dev.hybridious.modules.MapFilterModule;
-import meteordevelopment.meteorclient.systems.modules.Modules;
+import dev.hybridious.utils.MapFilterLog;
+import dev.hybridious.utils.MapMosaicDetector;
 import net.minecraft.entity.decoration.ItemFrameEntity;
 import net.minecraft.item.ItemStack;
 import net.minecraft.item.Items;
@@ -17,9 +18,15 @@ public class ItemFrameMapFilterMixin {
 
     @Inject(method = "getHeldItemStack", at = @At("RETURN"), cancellable = true)
     private void filterMapInFrame(CallbackInfoReturnable<ItemStack> cir) {
-        MapFilterModule module = Modules.get().get(MapFilterModule.class);
+        if (MapMosaicDetector.isScanning()) return;
+
+        MapFilterModule module = MapFilterModule.get();
         if (module == null || !module.isActive()) return;
 
+        // Only hide the map on the client; the integrated server would save the frame empty
+        ItemFrameEntity frame = (ItemFrameEntity) (Object) this;
+        if (!frame.getWorld().isClient) return;
+
         ItemStack stack = cir.getReturnValue();
         if (!stack.isOf(Items.FILLED_MAP)) return;
 
@@ -28,8 +35,8 @@ public class ItemFrameMapFilterMixin {
 
         int id = mapId.id();
 
-        if (!module.shouldRenderMap(id)) {
-            System.out.println("[MapFilter] [ItemFrame] BLOCKING map " + id + " in item frame");
+        if (!module.shouldRenderFramedMap(id, frame)) {
+            MapFilterLog.trace("[ItemFrame] Blocking map ", id);
             cir.setReturnValue(ItemStack.EMPTY);
         }
     }
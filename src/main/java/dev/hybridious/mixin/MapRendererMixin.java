@@ -1,7 +1,7 @@
 package dev.hybridious.mixin;
 
 import dev.hybridious.modules.MapFilterModule;
-import meteordevelopment.meteorclient.systems.modules.Modules;
+import dev.hybridious.utils.MapFilterLog;
 import net.minecraft.client.render.MapRenderer;
 import net.minecraft.client.render.VertexConsumerProvider;
 import net.minecraft.client.util.math.MatrixStack;
@@ -25,22 +25,17 @@ public class MapRendererMixin {
                            MapIdComponent mapIdComponent, MapState state, boolean hidePlayerIcons,
                            int light, CallbackInfo ci) {
         try {
-            MapFilterModule module = Modules.get().get(MapFilterModule.class);
+            MapFilterModule module = MapFilterModule.get();
 
             if (module != null && module.isActive() && mapIdComponent != null) {
                 int id = mapIdComponent.id();
-                System.out.println("[MapFilter] [MapRenderer] Checking map ID: " + id);
-
                 if (!module.shouldRenderMap(id)) {
-                    System.out.println("[MapFilter] [MapRenderer] *** BLOCKING map ID: " + id + " (item frames + held maps) ***");
+                    MapFilterLog.trace("[MapRenderer] Blocking map ", id);
                     ci.cancel();
-                } else {
-                    System.out.println("[MapFilter] [MapRenderer] Allowing map ID: " + id);
                 }
             }
         } catch (Exception e) {
-            System.err.println("[MapFilter] [MapRenderer] Error: " + e.getMessage());
-            e.printStackTrace();
+            MapFilterLog.error("[MapRenderer] Error: " + e.getMessage());
         }
     }
 }
\ No newline at end of file
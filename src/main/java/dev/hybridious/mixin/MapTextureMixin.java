@@ -1,7 +1,7 @@
 package dev.hybridious.mixin;
 
 import dev.hybridious.modules.MapFilterModule;
-import meteordevelopment.meteorclient.systems.modules.Modules;
+import dev.hybridious.utils.MapFilterLog;
 import net.minecraft.client.render.MapRenderer;
 import net.minecraft.component.type.MapIdComponent;
 import org.spongepowered.asm.mixin.Mixin;
@@ -23,38 +23,17 @@ public class MapTextureMixin {
             require = 0
     )
     private void onTextureDraw(CallbackInfo ci) {
-        System.out.println("[MapFilter] [MIXIN] MapTextureMixin.draw() called!");
-
         try {
-            MapFilterModule module = Modules.get().get(MapFilterModule.class);
-
-            if (module == null) {
-                System.out.println("[MapFilter] [MIXIN] Module is null!");
-                return;
-            }
-
-            if (!module.isActive()) {
-                System.out.println("[MapFilter] [MIXIN] Module is not active");
-                return;
-            }
-
-            if (id == null) {
-                System.out.println("[MapFilter] [MIXIN] Map ID is null!");
-                return;
-            }
+            MapFilterModule module = MapFilterModule.get();
+            if (module == null || !module.isActive() || id == null) return;
 
             int mapId = id.id();
-            System.out.println("[MapFilter] [MIXIN] Checking map ID: " + mapId);
-
             if (!module.shouldRenderMap(mapId)) {
-                System.out.println("[MapFilter] [MIXIN] *** BLOCKING map ID: " + mapId + " ***");
+                MapFilterLog.trace("[MapTexture] Blocking map ", mapId);
                 ci.cancel();
-            } else {
-                System.out.println("[MapFilter] [MIXIN] Allowing map ID: " + mapId);
             }
         } catch (Exception e) {
-            System.err.println("[MapFilter] [MIXIN] Error checking map: " + e.getMessage());
-            e.printStackTrace();
+            MapFilterLog.error("[MapTexture] Error checking map: " + e.getMessage());
         }
     }
 }
\ No newline at end of file
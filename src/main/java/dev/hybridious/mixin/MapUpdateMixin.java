@@ -0,0 +1,25 @@
+package dev.hybridious.mixin;
+
+import dev.hybridious.modules.MapFilterModule;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import net.minecraft.network.packet.s2c.play.MapUpdateS2CPacket;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+@Mixin(ClientPlayNetworkHandler.class)
+public class MapUpdateMixin {
+
+    // TAIL only runs on the client thread, after the colors were written into the MapState
+    @Inject(method = "onMapUpdate", at = @At("TAIL"))
+    private void onMapUpdate(MapUpdateS2CPacket packet, CallbackInfo ci) {
+        // Decoration-only updates (player markers) leave the artwork alone
+        if (packet.updateData().isEmpty()) return;
+
+        MapFilterModule module = MapFilterModule.get();
+        if (module != null && module.isActive()) {
+            module.markMapChanged(packet.mapId().id());
+        }
+    }
+}
@@ -1,22 +1,74 @@
 package dev.hybridious.modules;
 import dev.hybridious.Hybridious;
+import meteordevelopment.meteorclient.events.render.Render3DEvent;
+import meteordevelopment.meteorclient.events.world.TickEvent;
 import meteordevelopment.meteorclient.settings.*;
 import meteordevelopment.meteorclient.systems.modules.Module;
+import meteordevelopment.orbit.EventHandler;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.render.Camera;
+import net.minecraft.entity.decoration.ItemFrameEntity;
 import net.minecraft.item.map.MapState;
 import net.minecraft.component.type.MapIdComponent;
 import dev.hybridious.utils.*;
 
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MapFilterModule extends Module {
     private final SettingGroup sgGeneral = settings.getDefaultGroup();
 
+    private final Setting<MapClassifier.Engine> engine = sgGeneral.add(new EnumSetting.Builder<MapClassifier.Engine>()
+            .name("classifier")
+            .description("Backend that classifies new maps. Local runs a model file in-process, None only applies cached and manual verdicts.")
+            .defaultValue(MapClassifier.Engine.Http)
+            .onChanged(value -> resetClassifier())
+            .build()
+    );
+
     private final Setting<String> apiUrl = sgGeneral.add(new StringSetting.Builder()
             .name("api-url")
             .description("The URL of the NSFW detection API")
             .defaultValue("http://127.0.0.1:5000")
+            .visible(() -> engine.get() == MapClassifier.Engine.Http)
+            .onChanged(value -> resetClassifier())
+            .build()
+    );
+
+    private final Setting<Boolean> rawUpload = sgGeneral.add(new BoolSetting.Builder()
+            .name("raw-upload")
+            .description("Send raw palette indices instead of PNG images when the API supports it")
+            .defaultValue(true)
+            .visible(() -> engine.get() == MapClassifier.Engine.Http)
+            .onChanged(value -> resetClassifier())
+            .build()
+    );
+
+    private final Setting<String> localModel = sgGeneral.add(new StringSetting.Builder()
+            .name("local-model")
+            .description("Model file for the local classifier (empty for map_model.bin in the cache folder)")
+            .defaultValue("")
+            .visible(() -> engine.get() == MapClassifier.Engine.Local)
+            .onChanged(value -> resetClassifier())
+            .build()
+    );
+
+    private final Setting<Integer> localThreads = sgGeneral.add(new IntSetting.Builder()
+            .name("local-threads")
+            .description("Inference threads for the local classifier; defaults to the cores the game leaves idle")
+            .defaultValue(LocalMapClassifier.spareCores())
+            .min(1)
+            .max(32)
+            .sliderMin(1)
+            .sliderMax(16)
+            .visible(() -> engine.get() == MapClassifier.Engine.Local)
+            .onChanged(value -> resetClassifier())
             .build()
     );
 
@@ -24,6 +76,7 @@ public class MapFilterModule extends Module {
             .name("use-threshold")
             .description("Send custom threshold to server. If disabled, server uses its default.")
             .defaultValue(true)
+            .onChanged(value -> forgetClassifications())
             .build()
     );
 
@@ -36,12 +89,13 @@ public class MapFilterModule extends Module {
             .sliderMin(0.0)
             .sliderMax(1.0)
             .visible(useThreshold::get)
+            .onChanged(value -> forgetClassifications())
             .build()
     );
 
     private final Setting<Integer> batchSize = sgGeneral.add(new IntSetting.Builder()
             .name("batch-size")
-            .description("Number of maps to validate in each batch (1-100)")
+            .description("Number of maps to validate in each batch (1-100), the upper bound when adaptive")
             .defaultValue(20)
             .min(1)
             .max(100)
@@ -52,7 +106,7 @@ public class MapFilterModule extends Module {
 
     private final Setting<Integer> batchDelay = sgGeneral.add(new IntSetting.Builder()
             .name("batch-delay-ms")
-            .description("Delay before processing batch (allows maps to accumulate)")
+            .description("Delay before processing batch (allows maps to accumulate), the upper bound when adaptive")
             .defaultValue(1000)
             .min(100)
             .max(2000)
@@ -61,6 +115,78 @@ public class MapFilterModule extends Module {
             .build()
     );
 
+    private final Setting<Boolean> adaptiveBatching = sgGeneral.add(new BoolSetting.Builder()
+            .name("adaptive-batching")
+            .description("Size batches and delays from measured classifier latency to meet the target time-to-verdict")
+            .defaultValue(true)
+            .build()
+    );
+
+    private final Setting<Integer> targetLatency = sgGeneral.add(new IntSetting.Builder()
+            .name("target-latency-ms")
+            .description("Time from a map being queued to its verdict that adaptive batching aims for")
+            .defaultValue(1000)
+            .min(100)
+            .max(10000)
+            .sliderMin(100)
+            .sliderMax(5000)
+            .visible(adaptiveBatching::get)
+            .build()
+    );
+
+    private final Setting<Integer> maxInFlight = sgGeneral.add(new IntSetting.Builder()
+            .name("max-in-flight")
+            .description("Batches that may be awaiting a verdict at once (applies on re-enable)")
+            .defaultValue(2)
+            .min(1)
+            .max(8)
+            .sliderMin(1)
+            .sliderMax(8)
+            .build()
+    );
+
+    private final Setting<Integer> queueCapacity = sgGeneral.add(new IntSetting.Builder()
+            .name("queue-capacity")
+            .description("Most maps waiting for validation at once; more are held back until there is room")
+            .defaultValue(512)
+            .min(16)
+            .max(10000)
+            .sliderMin(16)
+            .sliderMax(2048)
+            .build()
+    );
+
+    private final Setting<DegradedPolicy> degradedPolicy = sgGeneral.add(new EnumSetting.Builder<DegradedPolicy>()
+            .name("degraded-policy")
+            .description("Unknown maps while the classifier is failing: Block them for the session, show only cached maps until it recovers, or Allow them until it recovers")
+            .defaultValue(DegradedPolicy.CacheOnly)
+            .build()
+    );
+
+    private final Setting<Integer> breakerThreshold = sgGeneral.add(new IntSetting.Builder()
+            .name("breaker-failures")
+            .description("Failed batches in a row before the classifier is skipped and probed instead")
+            .defaultValue(3)
+            .min(1)
+            .max(20)
+            .sliderMin(1)
+            .sliderMax(10)
+            .onChanged(value -> configureBreaker())
+            .build()
+    );
+
+    private final Setting<Integer> breakerCooldown = sgGeneral.add(new IntSetting.Builder()
+            .name("breaker-cooldown-ms")
+            .description("Wait before probing a failing classifier; doubles on each failed probe, up to a minute")
+            .defaultValue(5000)
+            .min(500)
+            .max(60000)
+            .sliderMin(500)
+            .sliderMax(30000)
+            .onChanged(value -> configureBreaker())
+            .build()
+    );
+
     private final Setting<Boolean> useHashCache = sgGeneral.add(new BoolSetting.Builder()
             .name("use-hash-cache")
             .description("Cache results by pixel hash for instant recognition")
@@ -68,54 +194,192 @@ public class MapFilterModule extends Module {
             .build()
     );
 
-    private final Setting<Boolean> logResults = sgGeneral.add(new BoolSetting.Builder()
-            .name("log-results")
-            .description("Log API responses to console")
-            .defaultValue(true)
+    private final Setting<Boolean> perceptualHash = sgGeneral.add(new BoolSetting.Builder()
+            .name("perceptual-hash")
+            .description("Block slightly edited copies of known NSFW maps without asking the API")
+            .defaultValue(false)
+            .visible(useHashCache::get)
+            .build()
+    );
+
+    private final Setting<Integer> perceptualDistance = sgGeneral.add(new IntSetting.Builder()
+            .name("perceptual-distance")
+            .description("Max differing bits (of 64) for a map to count as a copy of a known NSFW map")
+            .defaultValue(6)
+            .min(0)
+            .max(16)
+            .sliderMin(0)
+            .sliderMax(16)
+            .visible(() -> useHashCache.get() && perceptualHash.get())
+            .build()
+    );
+
+    private final Setting<Boolean> mosaicDetection = sgGeneral.add(new BoolSetting.Builder()
+            .name("mosaic-detection")
+            .description("Stitch adjacent item frame maps into one image and classify the whole artwork at once")
+            .defaultValue(false)
+            .build()
+    );
+
+    private final Setting<Integer> mosaicMaxSize = sgGeneral.add(new IntSetting.Builder()
+            .name("mosaic-max-size")
+            .description("Largest mosaic (in frames per side) that is stitched together")
+            .defaultValue(10)
+            .min(2)
+            .max(16)
+            .sliderMin(2)
+            .sliderMax(16)
+            .visible(mosaicDetection::get)
+            .build()
+    );
+
+    private final Setting<Integer> cacheMaxEntries = sgGeneral.add(new IntSetting.Builder()
+            .name("cache-max-entries")
+            .description("Verdicts kept on disk; the least recently seen API verdicts are evicted first, manual ones never (0 = unlimited)")
+            .defaultValue(250000)
+            .min(0)
+            .max(10000000)
+            .sliderMin(0)
+            .sliderMax(1000000)
+            .visible(useHashCache::get)
+            .build()
+    );
+
+    private final Setting<Integer> cacheTtlDays = sgGeneral.add(new IntSetting.Builder()
+            .name("cache-ttl-days")
+            .description("Days until an API verdict is checked again, e.g. after a model upgrade (0 = never)")
+            .defaultValue(0)
+            .min(0)
+            .max(3650)
+            .sliderMin(0)
+            .sliderMax(365)
+            .visible(useHashCache::get)
+            .build()
+    );
+
+    private final Setting<Integer> flushInterval = sgGeneral.add(new IntSetting.Builder()
+            .name("cache-flush-interval-ms")
+            .description("How often new cache entries are written to disk in the background")
+            .defaultValue(2000)
+            .min(250)
+            .max(30000)
+            .sliderMin(250)
+            .sliderMax(10000)
+            .visible(useHashCache::get)
+            .build()
+    );
+
+    private final Setting<Integer> flushThreshold = sgGeneral.add(new IntSetting.Builder()
+            .name("cache-flush-threshold")
+            .description("Number of unsaved cache entries that triggers an early background write")
+            .defaultValue(64)
+            .min(1)
+            .max(4096)
+            .sliderMin(1)
+            .sliderMax(512)
+            .visible(useHashCache::get)
             .build()
     );
 
-    private final Map<Integer, Boolean> validationCache = new ConcurrentHashMap<>();
-    private final Map<Integer, String> mapHashes = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap.KeySetView<Integer, Boolean> pendingValidations = ConcurrentHashMap.newKeySet();
-    private final ConcurrentLinkedQueue<Integer> batchQueue = new ConcurrentLinkedQueue<>();
+    private final Setting<String> bundleKey = sgGeneral.add(new StringSetting.Builder()
+            .name("bundle-key")
+            .description("Shared secret for signing and verifying verdict bundles (empty for unsigned, imported by command only and never as manual overrides)")
+            .defaultValue("")
+            .build()
+    );
+
+    private final Setting<MapFilterLog.Level> logLevel = sgGeneral.add(new EnumSetting.Builder<MapFilterLog.Level>()
+            .name("log-level")
+            .description("Console logging: Info for batches and cache events, Debug for every verdict, Trace for every draw")
+            .defaultValue(MapFilterLog.Level.Info)
+            .onChanged(MapFilterLog::setLevel)
+            .build()
+    );
+
+    // Queued maps not drawn for this long are dropped instead of validated
+    private static final long STALE_MS = 2000;
+    // Bounds the hashing done on the client thread when many maps update at once
+    private static final int MAX_CHANGED_PER_TICK = 32;
+    private static final long MAX_BREAKER_COOLDOWN_MS = 60_000;
+    // How long deactivation waits for running batches before closing the cache
+    private static final long VALIDATION_SHUTDOWN_SECONDS = 2;
+
+    private static MapFilterModule instance;
+
+    // Verdict, pending flag and content hash of every map seen this session
+    private final MapSessionTable session = new MapSessionTable();
+    private final Map<Integer, QueuedMap> batchQueue = new ConcurrentHashMap<>();
+    // One request per distinct image this session; identical maps under other IDs attach to it
+    private final Map<MapHashKey, CompletableFuture<MapClassifier.Result>> classified = new ConcurrentHashMap<>();
+    // Verdicts of mosaics classified this session, by MapMosaicDetector.Mosaic#id
+    private final Map<String, MosaicResult> mosaicResults = new ConcurrentHashMap<>();
+    // Known maps whose colors the server has changed since they were last hashed
+    private final Set<Integer> changedMaps = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean kickQueued = new AtomicBoolean();
+    private final AdaptiveBatchController batchController = new AdaptiveBatchController();
+    private final CircuitBreaker breaker = new CircuitBreaker(3, 5000, MAX_BREAKER_COOLDOWN_MS);
+    // Bumped on every verdict change so memoized render decisions are recomputed
+    private final AtomicInteger verdictGeneration = new AtomicInteger();
+    private final MapDecisionTable decisions = new MapDecisionTable(256);
+    private int decisionGeneration;
+    private int window;
+
+    private volatile Map<Integer, MapMosaicDetector.Mosaic> mosaics = Map.of();
+    private int mosaicTimer;
 
     private MapHashCache hashCache;
+    private volatile MapClassifier classifier;
     private ScheduledExecutorService batchProcessor;
     private ExecutorService validationExecutor;
 
     public MapFilterModule() {
         super(Hybridious.CATEGORY, "map-filter", "Filters NSFW maps using AI detection with batch processing");
+        instance = this;
+    }
+
+    /**
+     * The registered module, for mixins that run per map per frame and shouldn't pay for a
+     * {@code Modules} lookup each time
+     */
+    public static MapFilterModule get() {
+        return instance;
     }
 
     @Override
     public void onActivate() {
-        validationCache.clear();
-        pendingValidations.clear();
+        MapFilterLog.setLevel(logLevel.get());
+        session.clear();
+        verdictGeneration.incrementAndGet();
         batchQueue.clear();
-        mapHashes.clear();
+        forgetClassifications();
+        changedMaps.clear();
 
         // Initialize hash cache
         MinecraftClient client = MinecraftClient.getInstance();
         String minecraftDir = client.runDirectory.getAbsolutePath();
-        hashCache = new MapHashCache(minecraftDir);
+        hashCache = new MapHashCache(minecraftDir, flushInterval.get(), flushThreshold.get(),
+                cacheMaxEntries.get(), TimeUnit.DAYS.toMillis(cacheTtlDays.get()));
 
-        validationExecutor = Executors.newSingleThreadExecutor();
+        inFlight.set(0);
+        kickQueued.set(false);
+        batchController.reset();
+        configureBreaker();
+        breaker.reset();
+        window = maxInFlight.get();
+        validationExecutor = Executors.newFixedThreadPool(window);
         batchProcessor = Executors.newSingleThreadScheduledExecutor();
-
-        batchProcessor.scheduleWithFixedDelay(
-                this::processBatch,
-                batchDelay.get(),
-                batchDelay.get(),
-                TimeUnit.MILLISECONDS
-        );
+        batchProcessor.schedule(this::batchTick, batchDelay.get(), TimeUnit.MILLISECONDS);
+        // Pick up bundles teammates dropped in the bundles folder. Only signed ones: an unsigned
+        // bundle could come from anyone, so it is merged only when asked for by command.
+        if (!bundleKey.get().isEmpty()) {
+            validationExecutor.execute(this::importBundles);
+        }
 
         info("Map Filter activated (batch + hash cache)");
-        if (logResults.get()) {
-            MapHashCache.CacheStats stats = hashCache.getStats();
-            System.out.println("[MapFilter] Hash cache loaded: " + stats.total +
-                    " entries (" + stats.blocked + " blocked, " + stats.safe + " safe)");
-        }
+        MapHashCache.CacheStats stats = hashCache.getStats();
+        MapFilterLog.info("Hash cache loaded: " + stats.total +
+                " entries (" + stats.blocked + " blocked, " + stats.safe + " safe)");
     }
 
     @Override
@@ -126,20 +390,199 @@ public class MapFilterModule extends Module {
         }
         if (validationExecutor != null) {
             validationExecutor.shutdownNow();
+            try {
+                // Let a batch already past its classify call write its verdicts before the cache closes
+                if (!validationExecutor.awaitTermination(VALIDATION_SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                    MapFilterLog.error("Validation still running after " + VALIDATION_SHUTDOWN_SECONDS + "s, closing cache anyway");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             validationExecutor = null;
         }
-        validationCache.clear();
-        pendingValidations.clear();
+        resetClassifier();
+        if (hashCache != null) {
+            // Final write-behind flush so no verdict is lost on toggle/exit
+            hashCache.close();
+            hashCache = null;
+        }
+        session.clearVerdicts();
+        verdictGeneration.incrementAndGet();
         batchQueue.clear();
+        changedMaps.clear();
+        mosaics = Map.of();
         info("Map Filter deactivated");
     }
 
+    @EventHandler
+    private void onRender(Render3DEvent event) {
+        // New frame: decide every map afresh once
+        decisions.invalidate();
+    }
+
+    @EventHandler
+    private void onTick(TickEvent.Post event) {
+        if (!changedMaps.isEmpty()) revalidateChangedMaps();
+        if (!mosaicDetection.get() || mc.world == null) return;
+
+        // Rescan item frames once a second; entity access has to stay on the client thread
+        if (++mosaicTimer < 20) return;
+        mosaicTimer = 0;
+        mosaics = MapMosaicDetector.detect(mc.world, mosaicMaxSize.get());
+    }
+
+    /**
+     * Current engine, created on first use after activation or a settings change
+     */
+    private synchronized MapClassifier classifier() {
+        if (classifier == null) {
+            Path model = localModel.get().isBlank()
+                    ? MapHashCache.cacheDir(mc.runDirectory.getAbsolutePath()).resolve(LocalMapClassifier.DEFAULT_MODEL)
+                    : Paths.get(localModel.get());
+            classifier = MapClassifier.create(engine.get(), apiUrl.get(), rawUpload.get(), model, localThreads.get());
+        }
+        return classifier;
+    }
+
+    private void resetClassifier() {
+        // Closed outside the lock so validation threads asking for the new engine never wait on it
+        MapClassifier old;
+        synchronized (this) {
+            old = classifier;
+            classifier = null;
+        }
+        if (old != null) old.close();
+        // A different backend deserves a fresh chance, and may answer differently
+        breaker.reset();
+        forgetClassifications();
+    }
+
+    /**
+     * Verdicts shared between identical maps were given under the old settings; ask again
+     */
+    private void forgetClassifications() {
+        classified.clear();
+        mosaicResults.clear();
+    }
+
+    private void configureBreaker() {
+        breaker.configure(breakerThreshold.get(), breakerCooldown.get(), MAX_BREAKER_COOLDOWN_MS);
+    }
+
+    /**
+     * Render check for draw paths that don't know where the map is on screen
+     */
     public boolean shouldRenderMap(int mapId) {
+        return decide(mapId, null, false);
+    }
+
+    /**
+     * Render check for the map in the player's hand, which is validated before anything else
+     */
+    public boolean shouldRenderHeldMap(int mapId) {
+        return decide(mapId, null, true);
+    }
+
+    /**
+     * Render check for a map in an item frame, ranked by how much of the screen it covers
+     */
+    public boolean shouldRenderFramedMap(int mapId, ItemFrameEntity frame) {
+        return decide(mapId, frame, false);
+    }
+
+    /**
+     * Memoized per frame on the client thread: the first check of a map in a frame does the
+     * work and every other draw or {@code getHeldItemStack} call reuses it, until the next frame
+     * or a verdict change.
+     */
+    private boolean decide(int mapId, ItemFrameEntity frame, boolean held) {
         if (!isActive()) return true;
+        MapFilterMetrics.RENDER_CHECKS.increment();
+        if (!mc.isOnThread()) return shouldRenderMap(mapId, frame, held);
+
+        int generation = verdictGeneration.get();
+        if (generation != decisionGeneration) {
+            decisions.invalidate();
+            decisionGeneration = generation;
+        }
+
+        int decision = decisions.get(mapId);
+        if (decision != MapDecisionTable.MISSING) {
+            MapFilterMetrics.DECISIONS_REUSED.increment();
+            return decision == MapDecisionTable.RENDER;
+        }
+
+        boolean render = shouldRenderMap(mapId, frame, held);
+        decisions.put(mapId, render);
+        return render;
+    }
+
+    /**
+     * Verdicts reached off the client thread are stamped, so the first frame that applies them
+     * can record how long they took to reach the screen
+     */
+    private void setVerdict(int mapId, boolean isSafe) {
+        session.setVerdict(mapId, isSafe, mc.isOnThread() ? 0 : System.nanoTime());
+        verdictGeneration.incrementAndGet();
+    }
+
+    /**
+     * Called when a map update packet rewrote some of a map's colors. Maps never checked yet are
+     * ignored; they are hashed when first drawn anyway.
+     */
+    public void markMapChanged(int mapId) {
+        if (session.verdict(mapId) != MapSessionTable.UNKNOWN || session.hash(mapId) != null) {
+            changedMaps.add(mapId);
+        }
+    }
+
+    /**
+     * Rehash maps the server changed. Same content keeps its verdict, content the cache knows
+     * takes the cached verdict, anything else is blocked and queued for validation again.
+     */
+    private void revalidateChangedMaps() {
+        Iterator<Integer> iterator = changedMaps.iterator();
+        for (int n = 0; n < MAX_CHANGED_PER_TICK && iterator.hasNext(); n++) {
+            int mapId = iterator.next();
+            iterator.remove();
+
+            MapState state = getMapState(mapId);
+            if (state == null) continue;
+
+            MapHashKey hash = MapHashCache.hashColors(state.colors);
+            if (hash == null || hash.equals(session.hash(mapId))) continue;
+            session.setHash(mapId, hash);
+            // Any mosaic this map is a tile of now shows a different picture
+            mosaicResults.values().removeIf(mosaic -> mosaic.contains(mapId));
 
+            Boolean isSafe = useHashCache.get() && hashCache != null ? hashCache.isSafe(hash) : null;
+            if (isSafe != null) {
+                setVerdict(mapId, isSafe);
+                if (MapFilterLog.isDebug()) {
+                    MapFilterLog.debug("Map " + mapId + " changed: " + (isSafe ? "SFW" : "NSFW") + " (cached)");
+                }
+                continue;
+            }
+
+            session.clearVerdict(mapId);
+            verdictGeneration.incrementAndGet();
+            session.markPending(mapId);
+            if (batchQueue.putIfAbsent(mapId, new QueuedMap(mapId, MapProminence.UNKNOWN)) == null) {
+                MapFilterMetrics.MAPS_QUEUED.increment();
+            }
+            MapFilterLog.debug("Changed map queued for re-validation: ", mapId);
+            if (inFlight.get() == 0) kickBatch();
+        }
+    }
+
+    private boolean shouldRenderMap(int mapId, ItemFrameEntity frame, boolean held) {
         // Check validation cache first (already processed this session)
-        Boolean cached = validationCache.get(mapId);
-        if (cached != null) return cached;
+        int verdict = session.verdict(mapId);
+        if (verdict != MapSessionTable.UNKNOWN) {
+            long decidedAt = session.takeDecidedAt(mapId);
+            if (decidedAt != 0) MapFilterMetrics.VERDICT_TO_RENDER.recordSince(decidedAt);
+            return verdict == MapSessionTable.SAFE;
+        }
 
         // Try to get map state
         MapState state = getMapState(mapId);
@@ -151,21 +594,20 @@ public class MapFilterModule extends Module {
 
         // Check hash cache if enabled
         if (useHashCache.get() && hashCache != null) {
-            String hash = mapHashes.get(mapId);
+            MapHashKey hash = session.hash(mapId);
 
             // If we don't have hash yet, compute it
             if (hash == null) {
                 hash = hashCache.hashMap(state);
                 if (hash != null) {
-                    mapHashes.put(mapId, hash);
+                    session.setHash(mapId, hash);
 
                     // Check if hash is in cache
                     Boolean isSafe = hashCache.isSafe(hash);
                     if (isSafe != null) {
-                        validationCache.put(mapId, isSafe);
-                        if (logResults.get()) {
-                            System.out.println("[MapFilter] Map " + mapId + " matched hash: " +
-                                    (isSafe ? "SFW" : "NSFW") + " (cached)");
+                        setVerdict(mapId, isSafe);
+                        if (MapFilterLog.isDebug()) {
+                            MapFilterLog.debug("Map " + mapId + " matched hash: " + (isSafe ? "SFW" : "NSFW") + " (cached)");
                         }
                         return isSafe;
                     }
@@ -174,24 +616,56 @@ public class MapFilterModule extends Module {
                 // We have hash but no cache result - check again
                 Boolean isSafe = hashCache.isSafe(hash);
                 if (isSafe != null) {
-                    validationCache.put(mapId, isSafe);
+                    setVerdict(mapId, isSafe);
                     return isSafe;
                 }
             }
         }
 
+        // Queue full: hold the map back until there is room, except the one in hand
+        if (!held && !session.isPending(mapId) && batchQueue.size() >= queueCapacity.get()) {
+            MapFilterMetrics.MAPS_REJECTED.increment();
+            return renderUnvalidated();
+        }
+
+        // Classifier down and the policy is to fail fast: no point queueing behind it
+        if (breaker.isDegraded() && degradedPolicy.get() == DegradedPolicy.Block) {
+            setVerdict(mapId, false);
+            return false;
+        }
+
         // Not in cache - queue for validation and allow temporarily
         // Block only AFTER first validation attempt
-        if (pendingValidations.add(mapId)) {
-            batchQueue.offer(mapId);
-            if (logResults.get()) {
-                System.out.println("[MapFilter] Map " + mapId + " queued for validation");
-            }
-            return true; // Allow on first encounter
+        if (session.markPending(mapId)) {
+            batchQueue.put(mapId, new QueuedMap(mapId, prominence(frame, held, MapProminence.UNKNOWN)));
+            MapFilterMetrics.MAPS_QUEUED.increment();
+            MapFilterLog.debug("Queued for validation: map ", mapId);
+
+            // Nothing in flight: don't hold the map back for a whole delay window
+            if (inFlight.get() == 0) kickBatch();
+            // Allow on first encounter, unless degraded; then it's up to the policy
+            return !breaker.isDegraded() || renderUnvalidated();
         }
 
-        // Already queued - block while waiting
-        return false;
+        // Already queued - block while waiting, and keep its place in line current
+        QueuedMap queued = batchQueue.get(mapId);
+        if (queued != null) queued.seen(prominence(frame, held, Double.NaN));
+        return renderUnvalidated();
+    }
+
+    /**
+     * Maps waiting on a verdict are hidden, unless the classifier is down and the policy says
+     * to show them meanwhile
+     */
+    private boolean renderUnvalidated() {
+        return breaker.isDegraded() && degradedPolicy.get() == DegradedPolicy.Allow;
+    }
+
+    private double prominence(ItemFrameEntity frame, boolean held, double unknown) {
+        if (held) return MapProminence.HELD;
+        if (frame == null) return unknown;
+        Camera camera = mc.gameRenderer != null ? mc.gameRenderer.getCamera() : null;
+        return MapProminence.ofFrame(camera != null && camera.isReady() ? camera : null, frame);
     }
 
     /**
@@ -205,9 +679,7 @@ public class MapFilterModule extends Module {
         if (client.getServer() != null) {
             MapState state = client.getServer().getOverworld().getMapState(mapIdComponent);
             if (state != null) {
-                if (logResults.get()) {
-                    System.out.println("[MapFilter] Got MapState for " + mapId + " from integrated server");
-                }
+                MapFilterLog.trace("Got MapState from integrated server for map ", mapId);
                 return state;
             }
         }
@@ -216,16 +688,12 @@ public class MapFilterModule extends Module {
         if (client.world != null) {
             MapState state = client.world.getMapState(mapIdComponent);
             if (state != null) {
-                if (logResults.get()) {
-                    System.out.println("[MapFilter] Got MapState for " + mapId + " from client.world");
-                }
+                MapFilterLog.trace("Got MapState from client.world for map ", mapId);
                 return state;
             }
         }
 
-        if (logResults.get()) {
-            System.err.println("[MapFilter] Failed to get MapState for " + mapId);
-        }
+        MapFilterLog.trace("No MapState yet for map ", mapId);
         return null;
     }
 
@@ -237,14 +705,14 @@ public class MapFilterModule extends Module {
         if (state == null) return false;
 
         if (hashCache != null) {
-            String hash = hashCache.hashMap(state);
+            MapHashKey hash = hashCache.hashMap(state);
             if (hash != null) {
-                hashCache.markSafe(hash);
-                validationCache.put(mapId, true);
-                mapHashes.put(mapId, hash);
-                if (logResults.get()) {
-                    System.out.println("[MapFilter] Map " + mapId + " whitelisted (hash: " +
-                            hash.substring(0, 16) + "...)");
+                if (!hashCache.markSafe(hash)) return false;
+                cachePerceptual(state, true);
+                setVerdict(mapId, true);
+                session.setHash(mapId, hash);
+                if (MapFilterLog.isEnabled(MapFilterLog.Level.Info)) {
+                    MapFilterLog.info("Map " + mapId + " whitelisted (hash: " + hash.toString().substring(0, 16) + "...)");
                 }
                 return true;
             }
@@ -260,14 +728,14 @@ public class MapFilterModule extends Module {
         if (state == null) return false;
 
         if (hashCache != null) {
-            String hash = hashCache.hashMap(state);
+            MapHashKey hash = hashCache.hashMap(state);
             if (hash != null) {
-                hashCache.markUnsafe(hash);
-                validationCache.put(mapId, false);
-                mapHashes.put(mapId, hash);
-                if (logResults.get()) {
-                    System.out.println("[MapFilter] Map " + mapId + " blacklisted (hash: " +
-                            hash.substring(0, 16) + "...)");
+                if (!hashCache.markUnsafe(hash)) return false;
+                cachePerceptual(state, false);
+                setVerdict(mapId, false);
+                session.setHash(mapId, hash);
+                if (MapFilterLog.isEnabled(MapFilterLog.Level.Info)) {
+                    MapFilterLog.info("Map " + mapId + " blacklisted (hash: " + hash.toString().substring(0, 16) + "...)");
                 }
                 return true;
             }
@@ -275,29 +743,139 @@ public class MapFilterModule extends Module {
         return false;
     }
 
+    private void cachePerceptual(MapState state, boolean isSafe) {
+        long pHash = MapPerceptualHash.compute(state.colors);
+        if (pHash != 0) {
+            hashCache.cachePerceptual(pHash, isSafe, true);
+        }
+    }
+
+    /**
+     * Periodic flush. Reschedules itself, since the adaptive delay changes between runs.
+     */
+    private void batchTick() {
+        long delay = batchDelay.get();
+        try {
+            processBatch();
+            if (adaptiveBatching.get()) {
+                int size = batchController.batchSize(batchSize.get(), targetLatency.get());
+                delay = batchController.delayMs(size, targetLatency.get(), batchDelay.get());
+            }
+        } finally {
+            ScheduledExecutorService processor = batchProcessor;
+            if (processor != null && !processor.isShutdown()) {
+                processor.schedule(this::batchTick, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Flush right away instead of waiting for the next tick, when adaptive batching is on
+     */
+    private void kickBatch() {
+        if (!adaptiveBatching.get() || !kickQueued.compareAndSet(false, true)) return;
+
+        ScheduledExecutorService processor = batchProcessor;
+        if (processor == null) {
+            kickQueued.set(false);
+            return;
+        }
+        try {
+            processor.execute(() -> {
+                kickQueued.set(false);
+                processBatch();
+            });
+        } catch (RejectedExecutionException e) {
+            kickQueued.set(false);
+        }
+    }
+
+    /**
+     * Drain the queue into as many batches as the in-flight window allows, most prominent maps
+     * first. Maps beyond the window stay queued rather than piling up behind a slow request, and
+     * maps nobody has drawn for a while are dropped; they queue again if they come back.
+     */
     private void processBatch() {
-        if (batchQueue.isEmpty()) return;
+        if (batchQueue.isEmpty() || inFlight.get() >= window) return;
 
-        List<Integer> batch = new ArrayList<>();
-        int count = 0;
+        long now = System.currentTimeMillis();
+        List<QueuedMap> ready = new ArrayList<>(batchQueue.size());
+        for (QueuedMap queued : batchQueue.values()) {
+            if (now - queued.lastSeen > STALE_MS) {
+                if (batchQueue.remove(queued.mapId, queued)) {
+                    session.clearPending(queued.mapId);
+                    MapFilterMetrics.MAPS_DROPPED.increment();
+                    MapFilterLog.debug("Dropped from queue (no longer visible): map ", queued.mapId);
+                }
+                continue;
+            }
+            // Freeze the score so the sort sees a consistent order while render threads update it
+            queued.rank = queued.score;
+            ready.add(queued);
+        }
+        if (ready.isEmpty()) return;
+        ready.sort(QueuedMap.ORDER);
 
-        while (count < batchSize.get() && !batchQueue.isEmpty()) {
-            Integer mapId = batchQueue.poll();
-            if (mapId != null) {
-                batch.add(mapId);
-                count++;
+        int batches = window - inFlight.get();
+        if (!breaker.isAvailable()) {
+            // Classifier is failing: don't wait on it. Block drops the queue now; the other
+            // policies keep it (bounded, and pruned of stale maps) for when a probe succeeds.
+            if (degradedPolicy.get() == DegradedPolicy.Block) {
+                for (QueuedMap queued : ready) {
+                    if (batchQueue.remove(queued.mapId, queued)) {
+                        setVerdict(queued.mapId, false);
+                        session.clearPending(queued.mapId);
+                    }
+                }
             }
+            return;
         }
+        // Probe due: a single batch, so a recovering server isn't hit with the backlog. The batch
+        // only takes the probe if it actually has something to send.
+        if (breaker.isDegraded()) batches = 1;
 
-        if (batch.isEmpty()) return;
+        int limit = batchSize.get();
+        if (adaptiveBatching.get()) {
+            // Once the backlog outgrows what small batches can clear, favour throughput
+            int size = batchController.batchSize(limit, targetLatency.get());
+            if (ready.size() <= size * window) limit = size;
+        }
+
+        int next = 0;
+        while (next < ready.size() && batches-- > 0) {
+            List<Integer> batch = new ArrayList<>();
+
+            while (batch.size() < limit && next < ready.size()) {
+                QueuedMap queued = ready.get(next++);
+                if (batchQueue.remove(queued.mapId, queued)) {
+                    MapFilterMetrics.QUEUE_WAIT.recordSince(queued.queuedAt);
+                    batch.add(queued.mapId);
+                }
+            }
 
-        validationExecutor.submit(() -> validateBatch(batch));
+            if (batch.isEmpty()) return;
+
+            inFlight.incrementAndGet();
+            validationExecutor.submit(() -> {
+                try {
+                    validateBatch(batch);
+                } finally {
+                    inFlight.decrementAndGet();
+                    // The server just freed up; send whatever queued meanwhile
+                    if (!batchQueue.isEmpty()) kickBatch();
+                }
+            });
+        }
     }
 
     private void validateBatch(List<Integer> mapIds) {
+        // Read once: onDeactivate closes and clears the field while a batch may still be running
+        MapHashCache cache = hashCache;
+        List<ClassifyRequest> requests = new ArrayList<>();
         try {
             Map<Integer, MapState> mapStates = new HashMap<>();
-            Map<Integer, String> hashes = new HashMap<>();
+            Map<Integer, MapHashKey> hashes = new HashMap<>();
+            Map<Integer, Long> perceptualHashes = new HashMap<>();
             List<Integer> needValidation = new ArrayList<>();
 
             // First pass: compute hashes and check cache
@@ -307,26 +885,41 @@ public class MapFilterModule extends Module {
                     mapStates.put(mapId, state);
 
                     // Compute hash and check cache
-                    if (useHashCache.get() && hashCache != null) {
-                        String hash = hashCache.hashMap(state);
+                    if (useHashCache.get() && cache != null) {
+                        MapHashKey hash = cache.hashMap(state);
                         if (hash != null) {
                             hashes.put(mapId, hash);
-                            mapHashes.put(mapId, hash);
+                            session.setHash(mapId, hash);
 
                             // Check if already in cache
-                            Boolean isSafe = hashCache.isSafe(hash);
+                            Boolean isSafe = cache.isSafe(hash);
                             if (isSafe != null) {
                                 // Found in cache - use cached result
-                                validationCache.put(mapId, isSafe);
-                                pendingValidations.remove(mapId);
+                                setVerdict(mapId, isSafe);
+                                session.clearPending(mapId);
 
-                                if (logResults.get()) {
-                                    System.out.println("[MapFilter] Map " + mapId + ": " +
-                                            (isSafe ? "SFW" : "NSFW") + " (from cache)");
+                                if (MapFilterLog.isDebug()) {
+                                    MapFilterLog.debug("Map " + mapId + ": " + (isSafe ? "SFW" : "NSFW") + " (from cache)");
                                 }
                                 continue; // Skip API validation
                             }
                         }
+
+                        // Second tier: near-duplicate of a known NSFW map
+                        long pHash = MapPerceptualHash.compute(state.colors);
+                        if (pHash != 0) {
+                            perceptualHashes.put(mapId, pHash);
+                            MapPerceptualIndex.Match match = perceptualHash.get()
+                                    ? cache.nearestUnsafe(pHash, perceptualDistance.get()) : null;
+                            if (match != null) {
+                                setVerdict(mapId, false);
+                                session.clearPending(mapId);
+                                cache.cachePerceptualMatch(hash, match);
+
+                                MapFilterLog.debug("NSFW (perceptual match): map ", mapId);
+                                continue; // Skip API validation
+                            }
+                        }
                     }
 
                     // Not in cache - needs validation
@@ -334,107 +927,257 @@ public class MapFilterModule extends Module {
                 }
             }
 
+            if (mosaicDetection.get() && !needValidation.isEmpty()) {
+                validateMosaics(needValidation, hashes);
+            }
+
             if (needValidation.isEmpty()) {
                 return; // All maps were in cache
             }
 
-            // Prepare maps for API validation
-            Map<Integer, MapState> mapsToValidate = new HashMap<>();
+            // Prepare maps for API validation: each image once, and none that is already being
+            // (or has been) classified this session under another map ID
+            Map<Integer, byte[]> mapsToValidate = new HashMap<>();
             for (int mapId : needValidation) {
                 MapState state = mapStates.get(mapId);
-                if (state != null) {
-                    mapsToValidate.put(mapId, state);
+                if (state == null || state.colors == null) {
+                    unresolved(mapId, false);
+                    continue;
+                }
+
+                MapHashKey hash = hashes.computeIfAbsent(mapId, id -> MapHashCache.hashColors(state.colors));
+                CompletableFuture<MapClassifier.Result> request = new CompletableFuture<>();
+                CompletableFuture<MapClassifier.Result> existing = classified.putIfAbsent(hash, request);
+                if (existing != null) {
+                    MapFilterMetrics.MAPS_SHARED.increment();
+                    MapFilterLog.debug("Sharing the verdict of an identical map: map ", mapId);
+                    existing.whenComplete((result, error) -> shared(mapId, result, error));
+                    continue;
                 }
+                requests.add(new ClassifyRequest(mapId, hash, request));
+                mapsToValidate.put(mapId, state.colors);
             }
 
             if (mapsToValidate.isEmpty()) {
-                if (logResults.get()) {
-                    System.out.println("[MapFilter] No valid map states to validate");
-                }
-                needValidation.forEach(mapId -> {
-                    validationCache.put(mapId, false);
-                    pendingValidations.remove(mapId);
-                });
-                return;
+                return; // Every image was missing or already asked about
             }
 
             // Attempt API validation
-            Map<Integer, BatchMapValidator.ValidationResult> results = null;
-            boolean apiSuccess = false;
+            Map<Integer, MapClassifier.Result> results = null;
+            Exception failure = null;
 
-            try {
-                if (logResults.get()) {
-                    System.out.println("[MapFilter] Sending " + mapsToValidate.size() + " maps to API");
-                }
+            if (!breaker.allowRequest()) {
+                // Another batch holds the probe, or the breaker opened since this one was queued
+                failure = new IOException("Classifier unavailable");
+            } else {
+                boolean settled = false;
+                try {
+                    MapFilterLog.debug("Maps sent to the classifier: ", mapsToValidate.size());
+                    MapFilterMetrics.BATCHES_SENT.increment();
 
-                results = BatchMapValidator.validateBatch(
-                        mapsToValidate,
-                        apiUrl.get(),
-                        useThreshold.get() ? threshold.get() : null,
-                        logResults.get()
-                );
-                apiSuccess = true;
+                    long start = System.nanoTime();
+                    results = classifier().classify(mapsToValidate, useThreshold.get() ? threshold.get() : null);
+                    batchController.record(mapsToValidate.size(), (System.nanoTime() - start) / 1e6);
+                    breaker.recordSuccess();
+                    settled = true;
 
-                if (logResults.get()) {
-                    System.out.println("[MapFilter] API returned " + (results != null ? results.size() : 0) + " results");
-                }
-            } catch (Exception e) {
-                if (logResults.get()) {
-                    System.err.println("[MapFilter] API request failed: " + e.getMessage());
+                    MapFilterLog.debug("Results from the classifier: ", results != null ? results.size() : 0);
+                } catch (Exception e) {
+                    failure = e;
+                    MapFilterMetrics.BATCHES_FAILED.increment();
+                    MapFilterLog.error("API request failed: " + e.getMessage());
+                    settled = true;
+                    if (breaker.recordFailure()) {
+                        MapFilterMetrics.BREAKER_TRIPS.increment();
+                        MapFilterLog.info("Classifier failing, pausing requests (" + degradedPolicy.get() + " policy)");
+                    }
+                } finally {
+                    // An Error escaped; the request went out, so don't leave a probe hanging
+                    if (!settled) breaker.recordFailure();
                 }
             }
 
             // Process results
-            for (int mapId : needValidation) {
-                if (apiSuccess && results != null && results.containsKey(mapId)) {
+            for (ClassifyRequest request : requests) {
+                int mapId = request.mapId;
+                MapClassifier.Result result = results != null ? results.get(mapId) : null;
+                if (result != null) {
                     // API returned result - use it and cache it
-                    BatchMapValidator.ValidationResult result = results.get(mapId);
-                    validationCache.put(mapId, result.isSafe);
+                    setVerdict(mapId, result.isSafe);
+                    session.clearPending(mapId);
 
                     // Cache by hash
-                    if (useHashCache.get() && hashCache != null) {
-                        String hash = hashes.get(mapId);
-                        if (hash != null) {
-                            hashCache.cache(hash, result.isSafe, result.confidence, result.classification);
+                    if (useHashCache.get() && cache != null) {
+                        cache.cache(request.hash, result.isSafe, result.confidence, result.classification);
+                        Long pHash = perceptualHashes.get(mapId);
+                        if (pHash != null) {
+                            cache.cachePerceptual(pHash, result.isSafe, false);
                         }
                     }
 
-                    if (logResults.get()) {
-                        System.out.println("[MapFilter] Map " + mapId + ": " +
-                                (result.isSafe ? "SFW" : "NSFW") + " (from API)");
+                    if (MapFilterLog.isDebug()) {
+                        MapFilterLog.debug("Map " + mapId + ": " + (result.isSafe ? "SFW" : "NSFW") + " (from API)");
                     }
                 } else {
-                    // API failed or no result - block the map
-                    validationCache.put(mapId, false);
-                    if (logResults.get()) {
-                        System.out.println("[MapFilter] Map " + mapId + ": BLOCKED (API unavailable/failed)");
-                    }
+                    // No answer for this image; let a later sighting ask again
+                    classified.remove(request.hash, request.future);
+                    unresolved(mapId, failure != null);
                 }
 
-                pendingValidations.remove(mapId);
+                // Identical maps waiting on this image get the same outcome
+                if (failure != null) request.future.completeExceptionally(failure);
+                else request.future.complete(result);
             }
 
         } catch (Exception e) {
-            if (logResults.get()) {
-                System.err.println("[MapFilter] Batch error: " + e.getMessage());
-            }
+            MapFilterLog.error("Batch error: " + e.getMessage());
             // Block all maps on error
             for (int mapId : mapIds) {
-                validationCache.put(mapId, false);
-                pendingValidations.remove(mapId);
+                setVerdict(mapId, false);
+                session.clearPending(mapId);
+            }
+        } finally {
+            // Never leave identical maps waiting on a request that won't finish
+            for (ClassifyRequest request : requests) {
+                if (request.future.isDone()) continue;
+                classified.remove(request.hash, request.future);
+                request.future.completeExceptionally(new IOException("Batch abandoned"));
             }
         }
     }
 
+    /**
+     * A map that attached to an identical image's request, once that request finishes
+     */
+    private void shared(int mapId, MapClassifier.Result result, Throwable error) {
+        if (result == null) {
+            unresolved(mapId, error != null);
+            return;
+        }
+        setVerdict(mapId, result.isSafe);
+        session.clearPending(mapId);
+        if (MapFilterLog.isDebug()) {
+            MapFilterLog.debug("Map " + mapId + ": " + (result.isSafe ? "SFW" : "NSFW") + " (identical map)");
+        }
+    }
+
+    /**
+     * No verdict for a map. After an outage it is retried on recovery unless the policy is to
+     * block; otherwise it is blocked for the session.
+     */
+    private void unresolved(int mapId, boolean outage) {
+        if (outage && degradedPolicy.get() != DegradedPolicy.Block) {
+            batchQueue.putIfAbsent(mapId, new QueuedMap(mapId, MapProminence.UNKNOWN));
+            MapFilterLog.debug("Requeued (API unavailable): map ", mapId);
+            return;
+        }
+        setVerdict(mapId, false);
+        session.clearPending(mapId);
+        MapFilterLog.debug("BLOCKED (API unavailable/failed): map ", mapId);
+    }
+
+    /**
+     * Classify every mosaic touched by this batch as one stitched image, to catch artwork that
+     * only reads as NSFW when put together. A blocked mosaic blocks its tiles for this session;
+     * blocked tiles are removed from {@code needValidation}. A safe mosaic, or a failed call,
+     * leaves every tile to per-map validation, since a safe whole says nothing about each tile.
+     *
+     * Mosaic verdicts are never written to the hash cache: a tile is only ever part of this
+     * particular artwork, and an identical plain tile elsewhere must not inherit its verdict.
+     */
+    private void validateMosaics(List<Integer> needValidation, Map<Integer, MapHashKey> hashes) {
+        MapHashCache cache = hashCache;
+        Map<Integer, MapMosaicDetector.Mosaic> current = mosaics;
+        if (current.isEmpty()) return;
+
+        Set<MapMosaicDetector.Mosaic> attempted = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Integer> resolved = new HashSet<>();
+
+        for (int mapId : needValidation) {
+            MapMosaicDetector.Mosaic mosaic = current.get(mapId);
+            if (mosaic == null || !attempted.add(mosaic)) continue;
+
+            // Already classified this session: fan the verdict out again without restitching
+            MosaicResult cached = mosaicResults.get(mosaic.id());
+            MapClassifier.Result result = cached != null ? cached.result : classifyMosaic(mosaic);
+            if (result == null) continue;
+            if (cached == null) {
+                int[] tileIds = mosaic.tiles.stream().mapToInt(tile -> tile.mapId).toArray();
+                mosaicResults.put(mosaic.id(), new MosaicResult(tileIds, result));
+            }
+
+            if (!result.isSafe) {
+                for (MapMosaicDetector.Tile tile : mosaic.tiles) {
+                    MapHashKey hash = hashes.get(tile.mapId);
+                    if (hash == null) hash = session.hash(tile.mapId);
+
+                    // Manual overrides always win
+                    MapHashCache.CacheEntry existing = hash != null && cache != null ? cache.getCached(hash) : null;
+                    if (existing != null && existing.manual) continue;
+
+                    setVerdict(tile.mapId, false);
+                    session.clearPending(tile.mapId);
+                    batchQueue.remove(tile.mapId);
+                    resolved.add(tile.mapId);
+                }
+            }
+
+            if (MapFilterLog.isDebug()) {
+                MapFilterLog.debug("Mosaic of " + mosaic.tiles.size() + " maps: " +
+                        (result.isSafe ? "SFW" : "NSFW") + (cached != null ? " (mosaic seen before)" : " (from API)"));
+            }
+        }
+
+        needValidation.removeAll(resolved);
+    }
+
+    /**
+     * Stitch a mosaic and classify it as one image, through the breaker like any batch
+     *
+     * @return the verdict, or null if the classifier is unavailable or failed; the tiles then go
+     * through per-map validation
+     */
+    private MapClassifier.Result classifyMosaic(MapMosaicDetector.Mosaic mosaic) {
+        if (!breaker.allowRequest()) return null;
+
+        boolean settled = false;
+        try {
+            BufferedImage composite = MapMosaicDetector.stitch(mosaic, id -> {
+                MapState state = getMapState(id);
+                return state != null ? state.colors : null;
+            });
+
+            if (MapFilterLog.isDebug()) {
+                MapFilterLog.debug("Sending mosaic of " + mosaic.tiles.size() + " maps (" +
+                        mosaic.width() + "x" + mosaic.height() + ") as one image");
+            }
+
+            MapClassifier.Result result = classifier().classifyImage(composite, useThreshold.get() ? threshold.get() : null);
+            breaker.recordSuccess();
+            settled = true;
+            return result;
+        } catch (Exception e) {
+            MapFilterLog.error("Mosaic validation error: " + e.getMessage());
+            settled = true;
+            if (breaker.recordFailure()) {
+                MapFilterMetrics.BREAKER_TRIPS.increment();
+                MapFilterLog.info("Classifier failing, pausing requests (" + degradedPolicy.get() + " policy)");
+            }
+            return null;
+        } finally {
+            if (!settled) breaker.recordFailure();
+        }
+    }
+
     public MapValidationStatus getMapStatus(int mapId) {
         if (!isActive()) return MapValidationStatus.ALLOWED;
 
-        Boolean cached = validationCache.get(mapId);
-        if (cached != null) {
-            return cached ? MapValidationStatus.ALLOWED : MapValidationStatus.BLOCKED;
+        int verdict = session.verdict(mapId);
+        if (verdict != MapSessionTable.UNKNOWN) {
+            return verdict == MapSessionTable.SAFE ? MapValidationStatus.ALLOWED : MapValidationStatus.BLOCKED;
         }
 
-        return pendingValidations.contains(mapId) ?
+        return session.isPending(mapId) ?
                 MapValidationStatus.PENDING : MapValidationStatus.UNKNOWN;
     }
 
@@ -444,18 +1187,146 @@ public class MapFilterModule extends Module {
     public void clearHashCache() {
         if (hashCache != null) {
             hashCache.clear();
+            forgetClassifications();
             info("Hash cache cleared");
         }
     }
 
+    /**
+     * Export hash cache to sfw_maps.json / nsfw_maps.json
+     */
+    public boolean exportHashCache() {
+        if (hashCache == null) return false;
+        hashCache.exportJson();
+        return true;
+    }
+
+    /**
+     * Import sfw_maps.json / nsfw_maps.json into the hash cache
+     */
+    public int importHashCache() {
+        if (hashCache == null) return -1;
+        return hashCache.importJson();
+    }
+
+    /**
+     * Write a verdict bundle for sharing: the whole cache, or only what changed since the last export
+     *
+     * @return the bundle's file name, or null if it could not be written
+     */
+    public String exportBundle(boolean delta) {
+        MapHashCache cache = hashCache;
+        if (cache == null) return null;
+        try {
+            return cache.exportBundle(delta, bundleKey.get()).getFileName().toString();
+        } catch (IOException e) {
+            MapFilterLog.error("Failed to export bundle: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Merge every bundle in the bundles folder into the cache
+     *
+     * @return how many cached verdicts changed, or -1 if the cache isn't loaded
+     */
+    public int importBundles() {
+        MapHashCache cache = hashCache;
+        if (cache == null) return -1;
+
+        int changed = cache.importBundles(bundleKey.get());
+        if (changed > 0) {
+            // Maps already decided this session may have a different verdict now
+            session.resetVerdicts();
+            verdictGeneration.incrementAndGet();
+        }
+        return changed;
+    }
+
     /**
      * Get cache statistics
      */
     public String getCacheStats() {
         if (hashCache == null) return "Cache not initialized";
         MapHashCache.CacheStats stats = hashCache.getStats();
-        return String.format("Total: %d | Safe: %d | Blocked: %d",
-                stats.total, stats.safe, stats.blocked);
+        return String.format("Total: %d | Safe: %d | Blocked: %d | Hits: %d | Misses: %d | Evicted: %d | Expired: %d",
+                stats.total, stats.safe, stats.blocked, stats.hits, stats.misses, stats.evictions, stats.expirations);
+    }
+
+    /**
+     * Classifier health, for {@code .mapfilter perf}
+     */
+    public String getClassifierStatus() {
+        String status = switch (breaker.state()) {
+            case Closed -> "healthy";
+            case Open -> "failing, next probe in " + (breaker.retryInMs() + 999) / 1000 + "s";
+            case HalfOpen -> "probing";
+        };
+        return String.format("Classifier: %s | Queue: %d/%d | Policy: %s",
+                status, batchQueue.size(), queueCapacity.get(), degradedPolicy.get());
+    }
+
+    /**
+     * A pending map and how prominently it was last drawn. Render paths update it concurrently;
+     * only the batch thread reads {@code rank}.
+     */
+    private static final class QueuedMap {
+        // A map drawn at several places keeps its best score until this old
+        private static final long RESCORE_MS = 250;
+
+        static final Comparator<QueuedMap> ORDER = Comparator
+                .comparingDouble((QueuedMap queued) -> queued.rank)
+                .thenComparingLong(queued -> queued.queuedAt);
+
+        final int mapId;
+        final long queuedAt;
+        volatile double score;
+        volatile long scoredAt;
+        volatile long lastSeen;
+        double rank;
+
+        QueuedMap(int mapId, double score) {
+            this.mapId = mapId;
+            this.queuedAt = System.nanoTime();
+            this.score = score;
+            this.scoredAt = this.lastSeen = System.currentTimeMillis();
+        }
+
+        /**
+         * @param prominence {@link MapProminence} score, or NaN when the caller can't tell
+         */
+        void seen(double prominence) {
+            long now = System.currentTimeMillis();
+            lastSeen = now;
+            if (Double.isNaN(prominence)) return;
+            if (prominence < score || now - scoredAt > RESCORE_MS) {
+                score = prominence;
+                scoredAt = now;
+            }
+        }
+    }
+
+    // A map sent to the classifier, and the future identical maps wait on
+    private record ClassifyRequest(int mapId, MapHashKey hash, CompletableFuture<MapClassifier.Result> future) {
+    }
+
+    // A mosaic's verdict and its tiles, so a tile whose content changes can invalidate it
+    private record MosaicResult(int[] tileIds, MapClassifier.Result result) {
+        boolean contains(int mapId) {
+            for (int tileId : tileIds) {
+                if (tileId == mapId) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * What happens to maps with no verdict while the classifier is failing
+     */
+    public enum DegradedPolicy {
+        Block,
+        CacheOnly,
+        Allow
     }
 
     public enum MapValidationStatus {
@@ -1,5 +1,6 @@
 package dev.hybridious.modules;
 import dev.hybridious.Hybridious;
+import dev.hybridious.utils.UniformGrid;
 import net.minecraft.util.math.BlockPos;
 import meteordevelopment.meteorclient.events.game.GameLeftEvent;
 import meteordevelopment.meteorclient.events.render.Render3DEvent;
@@ -294,6 +295,7 @@ public class MinecartDetector extends Module {
     private final Set<Entity> stackedMinecarts = new HashSet<>();
     private final Set<Entity> offRailsMinecarts = new HashSet<>();
     private final Map<String, Long> knownStackedLocations = new HashMap<>();
+    private final UniformGrid stackGrid = new UniformGrid();
     private final Map<String, Long> knownWrongDirectionLocations = new HashMap<>();
     private final Map<String, Long> knownOffRailsLocations = new HashMap<>();
     private final Map<Integer, Long> wrongDirectionCooldowns = new HashMap<>();
@@ -703,78 +705,80 @@ public class MinecartDetector extends Module {
     }
 
     private void checkForStackedEntities(List<Entity> containerMinecarts) {
-        double radius = checkRadius.get();
         Set<String> currentSessionLocations = new HashSet<>();
         int size = containerMinecarts.size();
 
-        for (int i = 0; i < size; i++) {
+        // Bucket carts into radius-sized cells so only neighbouring cells are compared
+        stackGrid.reset(checkRadius.get());
+        for (Entity minecart : containerMinecarts) {
+            stackGrid.add(minecart.getX(), minecart.getY(), minecart.getZ());
+        }
+
+        // A cart's location key is the same for every pair it heads
+        String[] locationKeys = new String[size];
+        stackGrid.forEachPairWithin((i, j, distanceSq) -> {
             Entity minecart1 = containerMinecarts.get(i);
-            Vec3d pos1 = minecart1.getPos();
+            Entity minecart2 = containerMinecarts.get(j);
+
+            stackedMinecarts.add(minecart1);
+            stackedMinecarts.add(minecart2);
+
+            // Create location key
+            BlockPos blockPos = minecart1.getBlockPos();
+            String locationKey = locationKeys[i];
+            if (locationKey == null) {
+                locationKey = locationKeys[i] = String.format("%d,%d,%d",
+                        blockPos.getX(),
+                        blockPos.getY(),
+                        blockPos.getZ());
+            }
 
-            for (int j = i + 1; j < size; j++) {
-                Entity minecart2 = containerMinecarts.get(j);
-                Vec3d pos2 = minecart2.getPos();
+            currentSessionLocations.add(locationKey);
 
-                double distance = pos1.distanceTo(pos2);
+            // Check if we should alert
+            if (!knownStackedLocations.containsKey(locationKey)) {
+                // New stacked location found
+                double distance = Math.sqrt(distanceSq);
+                String serverName = getServerName();
+                String type1 = getMinecartTypeName((AbstractMinecartEntity) minecart1);
+                String type2 = getMinecartTypeName((AbstractMinecartEntity) minecart2);
 
-                if (distance <= radius) {
-                    stackedMinecarts.add(minecart1);
-                    stackedMinecarts.add(minecart2);
+                if (streamingMode.get()) {
+                    ChatUtils.warning(String.format("[MinecartDetector] Stacked minecarts detected on %s (coordinates hidden)", serverName));
+                } else {
+                    ChatUtils.warning(String.format("[MinecartDetector] Stacked %s and %s at X: %d, Y: %d, Z: %d (Distance: %.3f blocks) on %s",
+                            type1.toLowerCase(),
+                            type2.toLowerCase(),
+                            blockPos.getX(),
+                            blockPos.getY(),
+                            blockPos.getZ(),
+                            distance,
+                            serverName));
+                }
 
-                    // Create location key
-                    BlockPos blockPos = minecart1.getBlockPos();
-                    String locationKey = String.format("%d,%d,%d",
+                // Log to file
+                if (logStackedMinecarts.get() && moduleLogFile != null) {
+                    String logEntry = String.format("[%s] [%s] STACKED - %s and %s at X: %d, Y: %d, Z: %d (Distance: %.3f blocks)\n",
+                            getCurrentTimeStamp(),
+                            serverName,
+                            type1,
+                            type2,
                             blockPos.getX(),
                             blockPos.getY(),
-                            blockPos.getZ());
-
-                    currentSessionLocations.add(locationKey);
-
-                    // Check if we should alert
-                    if (!knownStackedLocations.containsKey(locationKey)) {
-                        // New stacked location found
-                        String serverName = getServerName();
-                        String type1 = getMinecartTypeName((AbstractMinecartEntity) minecart1);
-                        String type2 = getMinecartTypeName((AbstractMinecartEntity) minecart2);
-
-                        if (streamingMode.get()) {
-                            ChatUtils.warning(String.format("[MinecartDetector] Stacked minecarts detected on %s (coordinates hidden)", serverName));
-                        } else {
-                            ChatUtils.warning(String.format("[MinecartDetector] Stacked %s and %s at X: %d, Y: %d, Z: %d (Distance: %.3f blocks) on %s",
-                                    type1.toLowerCase(),
-                                    type2.toLowerCase(),
-                                    blockPos.getX(),
-                                    blockPos.getY(),
-                                    blockPos.getZ(),
-                                    distance,
-                                    serverName));
-                        }
-
-                        // Log to file
-                        if (logStackedMinecarts.get() && moduleLogFile != null) {
-                            String logEntry = String.format("[%s] [%s] STACKED - %s and %s at X: %d, Y: %d, Z: %d (Distance: %.3f blocks)\n",
-                                    getCurrentTimeStamp(),
-                                    serverName,
-                                    type1,
-                                    type2,
-                                    blockPos.getX(),
-                                    blockPos.getY(),
-                                    blockPos.getZ(),
-                                    distance);
-                            writeToLogFile(moduleLogFile, logEntry, true);
-                        }
-
-                        // Play sound
-                        if (playSoundAlert.get()) {
-                            mc.player.playSound(net.minecraft.sound.SoundEvents.ENTITY_EXPERIENCE_ORB_PICKUP, 1.0f, 1.0f);
-                        }
-
-                        // Remember this location
-                        knownStackedLocations.put(locationKey, System.currentTimeMillis());
-                    }
+                            blockPos.getZ(),
+                            distance);
+                    writeToLogFile(moduleLogFile, logEntry, true);
+                }
+
+                // Play sound
+                if (playSoundAlert.get()) {
+                    mc.player.playSound(net.minecraft.sound.SoundEvents.ENTITY_EXPERIENCE_ORB_PICKUP, 1.0f, 1.0f);
                 }
+
+                // Remember this location
+                knownStackedLocations.put(locationKey, System.currentTimeMillis());
             }
-        }
+        });
 
         // Clean up old stacked locations
         long currentTime = System.currentTimeMillis();
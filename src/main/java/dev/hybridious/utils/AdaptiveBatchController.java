@@ -0,0 +1,83 @@
+package dev.hybridious.utils;
+
+/**
+ * Picks batch size and flush delay from observed classifier latency.
+ *
+ * Batch latency is modelled as {@code fixed + perMap * size} and fitted with an exponentially
+ * decayed least-squares regression over completed batches, so the model follows the server
+ * as its load changes. Half of the target time-to-verdict is budgeted to the request itself
+ * and the rest to letting maps accumulate in the queue.
+ */
+public class AdaptiveBatchController {
+    private static final double DECAY = 0.9;
+    private static final long MIN_DELAY_MS = 25;
+
+    // Decayed sums for the regression of latency (y) on batch size (x)
+    private double weight;
+    private double sumX;
+    private double sumY;
+    private double sumXX;
+    private double sumXY;
+
+    public synchronized void record(int size, double latencyMs) {
+        weight = weight * DECAY + 1;
+        sumX = sumX * DECAY + size;
+        sumY = sumY * DECAY + latencyMs;
+        sumXX = sumXX * DECAY + (double) size * size;
+        sumXY = sumXY * DECAY + size * latencyMs;
+    }
+
+    public synchronized boolean hasData() {
+        return weight > 0;
+    }
+
+    /**
+     * Expected latency of a batch of {@code size} maps, or 0 before any batch completed.
+     */
+    public synchronized double predictLatency(int size) {
+        if (weight == 0) return 0;
+        double[] model = model();
+        return model[0] + model[1] * size;
+    }
+
+    /**
+     * Largest batch expected to come back within half of {@code targetMs}.
+     */
+    public synchronized int batchSize(int maxSize, double targetMs) {
+        if (weight == 0) return maxSize;
+        double[] model = model();
+        if (model[1] <= 0) return maxSize;
+        int size = (int) ((targetMs / 2 - model[0]) / model[1]);
+        return Math.max(1, Math.min(maxSize, size));
+    }
+
+    /**
+     * How long to let maps accumulate before sending a batch of {@code size}.
+     */
+    public synchronized long delayMs(int size, double targetMs, long maxDelayMs) {
+        long delay = (long) (targetMs - predictLatency(size));
+        return Math.max(MIN_DELAY_MS, Math.min(maxDelayMs, delay));
+    }
+
+    public synchronized void reset() {
+        weight = sumX = sumY = sumXX = sumXY = 0;
+    }
+
+    /**
+     * {fixed, perMap}. While every batch had the same size the slope is unknown, so latency
+     * is taken as proportional to size, which errs towards trying larger batches.
+     */
+    private double[] model() {
+        double meanX = sumX / weight;
+        double meanY = sumY / weight;
+        double varX = sumXX / weight - meanX * meanX;
+        if (varX < 0.25 || meanX == 0) {
+            return new double[]{0, meanX == 0 ? 0 : meanY / meanX};
+        }
+
+        double slope = (sumXY / weight - meanX * meanY) / varX;
+        if (slope < 0) slope = 0;
+        double fixed = Math.max(0, meanY - slope * meanX);
+        return new double[]{fixed, slope};
+    }
+}
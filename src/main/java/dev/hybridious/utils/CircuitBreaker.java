@@ -0,0 +1,127 @@
+package dev.hybridious.utils;
+
+/**
+ * Circuit breaker for the classifier.
+ *
+ * Closed: requests go through, and {@code failureThreshold} failures in a row open it. Open:
+ * requests are refused without trying, until the cooldown passes. Then it goes half-open and lets
+ * exactly one probe through. A successful probe closes it, a failed one opens it again with the
+ * cooldown doubled, up to {@code maxCooldownMs}.
+ */
+public final class CircuitBreaker {
+    public enum State {
+        Closed,
+        Open,
+        HalfOpen
+    }
+
+    private int failureThreshold;
+    private long baseCooldownMs;
+    private long maxCooldownMs;
+
+    // Written under the lock, read without it by render checks
+    private volatile State state = State.Closed;
+    private int failures;
+    private long cooldownMs;
+    private long openUntil;
+    private int trips;
+
+    public CircuitBreaker(int failureThreshold, long cooldownMs, long maxCooldownMs) {
+        configure(failureThreshold, cooldownMs, maxCooldownMs);
+    }
+
+    public synchronized void configure(int failureThreshold, long cooldownMs, long maxCooldownMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.baseCooldownMs = Math.max(1, cooldownMs);
+        this.maxCooldownMs = Math.max(this.baseCooldownMs, maxCooldownMs);
+        this.cooldownMs = this.baseCooldownMs;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * Whether the classifier is being avoided: open, or waiting on a probe
+     */
+    public boolean isDegraded() {
+        return state != State.Closed;
+    }
+
+    /**
+     * Could a request go out now: closed, or open with the cooldown over. Unlike
+     * {@link #allowRequest} this doesn't take the probe, so it is safe to ask before knowing
+     * whether anything will be sent.
+     */
+    public synchronized boolean isAvailable() {
+        return state == State.Closed || (state == State.Open && System.currentTimeMillis() >= openUntil);
+    }
+
+    /**
+     * May a request be sent now? When this returns true in {@link State#HalfOpen} the caller holds
+     * the single probe and must report its outcome, so call it right before the request goes out.
+     */
+    public synchronized boolean allowRequest() {
+        return switch (state) {
+            case Closed -> true;
+            case HalfOpen -> false;
+            case Open -> {
+                if (System.currentTimeMillis() < openUntil) yield false;
+                state = State.HalfOpen;
+                yield true;
+            }
+        };
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.Closed;
+        failures = 0;
+        cooldownMs = baseCooldownMs;
+    }
+
+    /**
+     * @return true if this failure opened the breaker
+     */
+    public synchronized boolean recordFailure() {
+        switch (state) {
+            case Closed -> {
+                if (++failures < failureThreshold) return false;
+                open();
+                return true;
+            }
+            case HalfOpen -> {
+                cooldownMs = Math.min(maxCooldownMs, cooldownMs * 2);
+                open();
+                return false;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    public synchronized void reset() {
+        state = State.Closed;
+        failures = 0;
+        cooldownMs = baseCooldownMs;
+        openUntil = 0;
+    }
+
+    /**
+     * Milliseconds until the next probe may go out, 0 unless open
+     */
+    public synchronized long retryInMs() {
+        return state == State.Open ? Math.max(0, openUntil - System.currentTimeMillis()) : 0;
+    }
+
+    public synchronized int trips() {
+        return trips;
+    }
+
+    private void open() {
+        if (state == State.Closed) trips++;
+        state = State.Open;
+        failures = 0;
+        openUntil = System.currentTimeMillis() + cooldownMs;
+    }
+}
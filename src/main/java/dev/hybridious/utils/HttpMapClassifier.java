@@ -0,0 +1,355 @@
+package dev.hybridious.utils;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Engine backed by the external NSFW detection API.
+ *
+ * Maps go to {@code POST /predict/batch/raw} when the server supports it: the body is each
+ * map's 16384 palette indices prefixed with a big-endian int length, sent as
+ * {@code application/octet-stream}, and the response has the same JSON shape as
+ * {@code /predict/batch}. A 404/405/415/501 there switches this engine to Base64 PNGs in
+ * JSON for the rest of its life. Mosaics are always sent as PNG.
+ *
+ * One {@link HttpClient} lives as long as the engine, so connections are kept alive between
+ * batches and, where the server speaks HTTP/2, concurrent batches share one multiplexed
+ * connection. The engine is thread-safe; the module bounds how many batches are in flight.
+ */
+public class HttpMapClassifier implements MapClassifier {
+    private static final String JSON_PATH = "predict/batch";
+    private static final String RAW_PATH = "predict/batch/raw";
+
+    private static final int RAW_UNKNOWN = 0;
+    private static final int RAW_SUPPORTED = 1;
+    private static final int RAW_UNSUPPORTED = 2;
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60); // Longer timeout for batch
+
+    private final String baseUrl;
+    private final HttpClient client;
+    private volatile int rawState;
+
+    public HttpMapClassifier(String apiUrl, boolean rawUpload) {
+        this.baseUrl = baseUrl(apiUrl);
+        this.rawState = rawUpload ? RAW_UNKNOWN : RAW_UNSUPPORTED;
+
+        String host = URI.create(baseUrl).getHost();
+        boolean isLocalhost = "localhost".equals(host) || "127.0.0.1".equals(host) || "0.0.0.0".equals(host);
+
+        // Go direct for localhost to avoid Minecraft's proxy settings
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .proxy(isLocalhost ? HttpClient.Builder.NO_PROXY : ProxySelector.getDefault())
+                .build();
+    }
+
+    /**
+     * Abort any batch still in flight rather than wait for it, since this runs when a setting
+     * changes on the client thread. Aborted batches fail with an IOException like any other.
+     */
+    @Override
+    public void close() {
+        client.shutdownNow();
+    }
+
+    @Override
+    public String name() {
+        return "http";
+    }
+
+    /**
+     * Validate multiple maps in a single batch request
+     */
+    @Override
+    public Map<Integer, Result> classify(Map<Integer, byte[]> maps, Double threshold) throws IOException {
+        Map<Integer, Result> results = new HashMap<>();
+
+        List<Integer> mapIds = new ArrayList<>(maps.size());
+        List<byte[]> arrays = new ArrayList<>(maps.size());
+        for (Map.Entry<Integer, byte[]> entry : maps.entrySet()) {
+            byte[] colors = entry.getValue();
+            if (colors == null || colors.length != MapPalette.MAP_PIXELS) {
+                MapFilterLog.debug("Skipping map with no color data: ", entry.getKey());
+                continue;
+            }
+            mapIds.add(entry.getKey());
+            arrays.add(colors);
+        }
+        if (arrays.isEmpty()) return results;
+
+        ResultSink sink = (index, result) -> {
+            if (index >= mapIds.size()) return;
+            int mapId = mapIds.get(index);
+            results.put(mapId, result);
+
+            if (MapFilterLog.isDebug()) {
+                MapFilterLog.debug("Batch result [" + mapId + "]: " +
+                        result.classification + " (" + String.format("%.1f%%", result.confidence * 100) + ")");
+            }
+        };
+
+        if (rawState == RAW_UNSUPPORTED || !sendRawBatch(arrays, threshold, sink)) {
+            sendPngBatch(arrays.size(), i -> MapEncoder.toPngBase64(arrays.get(i)), threshold, sink);
+        }
+        return results;
+    }
+
+    @Override
+    public Result classifyImage(BufferedImage image, Double threshold) throws IOException {
+        Result[] result = new Result[1];
+        sendPngBatch(1, i -> MapEncoder.toPngBase64(image), threshold, (index, r) -> {
+            if (index == 0) result[0] = r;
+        });
+        return result[0];
+    }
+
+    /**
+     * Send raw palette indices. Returns false if the server doesn't speak the raw format.
+     */
+    private boolean sendRawBatch(List<byte[]> arrays, Double threshold, ResultSink sink) throws IOException {
+        // Length prefixes and the color arrays themselves are handed to the client as-is
+        long start = System.nanoTime();
+        byte[] prefix = ByteBuffer.allocate(4).putInt(MapPalette.MAP_PIXELS).array();
+        List<byte[]> body = new ArrayList<>(arrays.size() * 2);
+        for (byte[] colors : arrays) {
+            body.add(prefix);
+            body.add(colors);
+        }
+        long length = (long) arrays.size() * (prefix.length + MapPalette.MAP_PIXELS);
+        MapFilterMetrics.ENCODE.recordSince(start);
+
+        MapFilterLog.debug("Sending raw batch, maps: ", arrays.size());
+
+        String path = threshold != null ? RAW_PATH + "?threshold=" + threshold : RAW_PATH;
+        start = System.nanoTime();
+        HttpResponse<InputStream> response = send(path, "application/octet-stream",
+                HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofByteArrays(body), length));
+
+        if (rawState == RAW_UNKNOWN && isUnsupported(response.statusCode())) {
+            response.body().close();
+            rawState = RAW_UNSUPPORTED;
+            MapFilterLog.info("Server has no raw upload endpoint (" + response.statusCode() +
+                    "), falling back to PNG");
+            return false;
+        }
+
+        readResults(response, sink);
+        MapFilterMetrics.HTTP_ROUND_TRIP.recordSince(start);
+        rawState = RAW_SUPPORTED;
+        return true;
+    }
+
+    /**
+     * Send Base64 PNGs to /predict/batch. The JSON body is generated one image at a time as the
+     * client pulls it and goes out chunked, so only the image being written is held as text.
+     * That also means the recorded round trip includes encoding the images.
+     */
+    private void sendPngBatch(int count, ImageSource images, Double threshold, ResultSink sink) throws IOException {
+        MapFilterLog.debug("Sending PNG batch, maps: ", count);
+
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = send(JSON_PATH, "application/json; charset=UTF-8",
+                HttpRequest.BodyPublishers.ofInputStream(() -> new JsonBatchBody(count, images, threshold)));
+        readResults(response, sink);
+        MapFilterMetrics.HTTP_ROUND_TRIP.recordSince(start);
+    }
+
+    private HttpResponse<InputStream> send(String path, String contentType, HttpRequest.BodyPublisher body)
+            throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", contentType)
+                .header("Accept", "application/json")
+                .header("User-Agent", "MinecraftMapFilter/1.0")
+                .POST(body)
+                .build();
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch request interrupted");
+        }
+    }
+
+    /**
+     * Parse {"results": [{"is_safe", "confidence", "class"}, ...], ...} straight off the socket,
+     * handing each result to the sink as soon as it is read.
+     */
+    private void readResults(HttpResponse<InputStream> response, ResultSink sink) throws IOException {
+        try (InputStream in = response.body()) {
+            if (response.statusCode() != 200) {
+                String errorBody = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                throw new IOException("API error " + response.statusCode() + ": " + errorBody);
+            }
+
+            JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            int count = 0;
+            double batchTime = -1;
+            double avgTime = -1;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "results" -> {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            sink.accept(count++, readResult(reader));
+                        }
+                        reader.endArray();
+                    }
+                    case "batch_inference_time_ms" -> batchTime = reader.nextDouble();
+                    case "avg_time_per_image_ms" -> avgTime = reader.nextDouble();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (batchTime >= 0) {
+                MapFilterMetrics.SERVER_INFERENCE.record((long) (batchTime * 1_000_000));
+                if (MapFilterLog.isDebug()) {
+                    MapFilterLog.debug("Batch complete: " + count + " maps in " +
+                            String.format("%.1fms (avg %.1fms/map)", batchTime, avgTime));
+                }
+            }
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed API response: " + e.getMessage(), e);
+        }
+    }
+
+    private static Result readResult(JsonReader reader) throws IOException {
+        boolean isSafe = false;
+        double confidence = 0;
+        String classification = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "is_safe" -> isSafe = reader.nextBoolean();
+                case "confidence" -> confidence = reader.nextDouble();
+                case "class" -> classification = reader.nextString();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (classification == null) throw new IOException("API result without a class");
+        return new Result(isSafe, confidence, classification);
+    }
+
+    private static boolean isUnsupported(int responseCode) {
+        return responseCode == 404 || responseCode == 405 || responseCode == 415 || responseCode == 501;
+    }
+
+    /**
+     * Normalize the configured URL to "scheme://host[:port]/[prefix/]", dropping any endpoint path
+     */
+    private static String baseUrl(String apiUrl) {
+        String urlString = apiUrl.trim();
+        if (!urlString.startsWith("http://") && !urlString.startsWith("https://")) {
+            urlString = "http://" + urlString;
+        }
+        if (urlString.endsWith("/" + JSON_PATH)) {
+            urlString = urlString.substring(0, urlString.length() - JSON_PATH.length());
+        }
+        if (!urlString.endsWith("/")) {
+            urlString += "/";
+        }
+        return urlString;
+    }
+
+    @FunctionalInterface
+    private interface ImageSource {
+        String base64(int index) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ResultSink {
+        void accept(int index, Result result);
+    }
+
+    /**
+     * {"images": ["<base64 png>", ...], "threshold": t} produced on demand. Each refill writes
+     * one JSON token group through a JsonWriter into a small reusable buffer.
+     */
+    private static final class JsonBatchBody extends InputStream {
+        private final int count;
+        private final ImageSource images;
+        private final Double threshold;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(32 * 1024);
+        private final JsonWriter json = new JsonWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+        private byte[] chunk = new byte[0];
+        private int chunkLength;
+        private int position;
+        private int next = -1;
+
+        JsonBatchBody(int count, ImageSource images, Double threshold) {
+            this.count = count;
+            this.images = images;
+            this.threshold = threshold;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= chunkLength && !fill()) return -1;
+            return chunk[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position >= chunkLength && !fill()) return -1;
+            int n = Math.min(len, chunkLength - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            if (next > count) return false;
+
+            // The opening and closing tokens ride along with the first and last image
+            buffer.reset();
+            if (next < 0) {
+                json.beginObject().name("images").beginArray();
+                next = 0;
+            }
+            if (next < count) {
+                json.value(images.base64(next++));
+            }
+            if (next == count) {
+                json.endArray();
+                if (threshold != null) {
+                    json.name("threshold").value(threshold);
+                }
+                json.endObject();
+                next++;
+            }
+            json.flush();
+
+            chunk = buffer.toByteArray();
+            chunkLength = chunk.length;
+            position = 0;
+            return true;
+        }
+    }
+}
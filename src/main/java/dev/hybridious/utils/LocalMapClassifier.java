@@ -0,0 +1,132 @@
+package dev.hybridious.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Engine that runs a {@link MapCnnModel} in the game's own JVM, so verdicts need no API and no
+ * network hop.
+ *
+ * Inference runs on a fixed pool of low-priority daemon threads, sized by the caller to the
+ * cores the game leaves idle. A batch is split into one task per map and the calling validation
+ * thread waits for all of them. The model is loaded on first use; a missing or broken model
+ * file fails each batch with an IOException, which the module treats like an unreachable API.
+ */
+public class LocalMapClassifier implements MapClassifier {
+    public static final String DEFAULT_MODEL = "map_model.bin";
+
+    private final Path modelPath;
+    private final ExecutorService workers;
+    private volatile MapCnnModel model;
+
+    public LocalMapClassifier(Path modelPath, int threads) {
+        this.modelPath = modelPath;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "MapFilter-Inference-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Every core except the ones the client and integrated server threads keep busy
+     */
+    public static int spareCores() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    @Override
+    public Map<Integer, Result> classify(Map<Integer, byte[]> maps, Double threshold) throws IOException {
+        MapCnnModel cnn = model();
+        double cutoff = threshold != null ? threshold : cnn.threshold();
+
+        long start = System.nanoTime();
+        List<Integer> mapIds = new ArrayList<>(maps.size());
+        List<Future<Double>> scores = new ArrayList<>(maps.size());
+        for (Map.Entry<Integer, byte[]> entry : maps.entrySet()) {
+            byte[] colors = entry.getValue();
+            if (colors == null || colors.length != MapPalette.MAP_PIXELS) {
+                MapFilterLog.debug("Skipping map with no color data: ", entry.getKey());
+                continue;
+            }
+            mapIds.add(entry.getKey());
+            scores.add(submit(() -> cnn.predict(colors)));
+        }
+
+        Map<Integer, Result> results = new HashMap<>();
+        for (int i = 0; i < scores.size(); i++) {
+            results.put(mapIds.get(i), result(await(scores.get(i)), cutoff));
+        }
+        if (!scores.isEmpty()) MapFilterMetrics.SERVER_INFERENCE.recordSince(start);
+        return results;
+    }
+
+    @Override
+    public Result classifyImage(BufferedImage image, Double threshold) throws IOException {
+        MapCnnModel cnn = model();
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        double score = await(submit(() -> cnn.predict(pixels, image.getWidth(), image.getHeight())));
+        return result(score, threshold != null ? threshold : cnn.threshold());
+    }
+
+    private MapCnnModel model() throws IOException {
+        MapCnnModel loaded = model;
+        if (loaded != null) return loaded;
+
+        synchronized (this) {
+            if (model == null) {
+                if (!Files.isRegularFile(modelPath)) {
+                    throw new IOException("No local model at " + modelPath);
+                }
+                model = MapCnnModel.load(modelPath);
+                MapFilterLog.info("Loaded local model " + modelPath.getFileName());
+            }
+            return model;
+        }
+    }
+
+    private static Result result(double score, double threshold) {
+        boolean isSafe = score < threshold;
+        return new Result(isSafe, isSafe ? 1 - score : score, isSafe ? "SFW" : "NSFW");
+    }
+
+    private Future<Double> submit(Callable<Double> task) throws IOException {
+        try {
+            return workers.submit(task);
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Local classifier is closed", e);
+        }
+    }
+
+    private static double await(Future<Double> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Local inference interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Local inference failed: " + e.getCause(), e.getCause());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package dev.hybridious.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * A classification backend for map art.
+ *
+ * Engines take raw 128x128 palette arrays ({@code MapState.colors}) and decide for themselves
+ * how to encode them, so each backend can be optimized and benchmarked on its own. Engines
+ * never decide what happens on failure: they throw, or leave a map out of the result, and
+ * {@code MapFilterModule} applies its (fail closed) policy.
+ */
+public interface MapClassifier extends AutoCloseable {
+
+    enum Engine {
+        Http,
+        Local,
+        None
+    }
+
+    class Result {
+        public final boolean isSafe;
+        public final double confidence;
+        public final String classification;
+
+        public Result(boolean isSafe, double confidence, String classification) {
+            this.isSafe = isSafe;
+            this.confidence = confidence;
+            this.classification = classification;
+        }
+    }
+
+    /**
+     * @param modelPath model file for {@link Engine#Local}
+     * @param threads   inference threads for {@link Engine#Local}
+     */
+    static MapClassifier create(Engine engine, String apiUrl, boolean rawUpload, Path modelPath, int threads) {
+        return switch (engine) {
+            case Http -> new HttpMapClassifier(apiUrl, rawUpload);
+            case Local -> new LocalMapClassifier(modelPath, threads);
+            case None -> new NoopMapClassifier();
+        };
+    }
+
+    String name();
+
+    /**
+     * Classify a batch of maps keyed by map ID. Maps missing from the result got no verdict.
+     *
+     * @param threshold NSFW confidence threshold, or null for the engine's default
+     */
+    Map<Integer, Result> classify(Map<Integer, byte[]> maps, Double threshold) throws IOException;
+
+    /**
+     * Classify one pre-rendered image of any size (e.g. a stitched mosaic).
+     *
+     * @return the verdict, or null if the engine gave none
+     */
+    Result classifyImage(BufferedImage image, Double threshold) throws IOException;
+
+    /**
+     * Release the engine. Called on the client thread when a setting changes, so it must not
+     * wait for batches still in flight.
+     */
+    @Override
+    default void close() {
+    }
+}
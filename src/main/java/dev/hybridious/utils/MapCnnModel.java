@@ -0,0 +1,365 @@
+package dev.hybridious.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Small convolutional classifier run in pure Java, loaded from an exported weight file.
+ *
+ * File layout, big-endian: magic "HMCM", version 1, input size S (128 divided by a power of
+ * two), per-channel RGB mean and std (3 floats each, applied to 0-1 values), the default NSFW
+ * threshold, the layer count, then each layer as a type byte and its parameters:
+ * <ul>
+ *   <li>1, conv: out channels, in channels, kernel (odd), stride, then int8 weights
+ *   [out][in][k][k], a float scale per output channel and a float bias per output channel.
+ *   Zero padding of k/2, followed by ReLU.</li>
+ *   <li>2, dense: outputs, inputs, int8 weights [out][in], float scale and bias per output.
+ *   ReLU unless it is the last layer.</li>
+ *   <li>3, global average pool: no parameters.</li>
+ * </ul>
+ * The last layer yields one logit (sigmoid gives the NSFW probability) or two (softmax, index 1
+ * is NSFW). The map is box-filtered from 128x128 down to SxS before the first layer.
+ *
+ * Weights are int8 on disk and dequantized once at load, since plain Java has no fast int8
+ * dot product. The model is immutable; scratch activations are per thread, so {@link #predict}
+ * allocates nothing after a thread's first call.
+ */
+public final class MapCnnModel {
+    private static final int MAGIC = 0x484D434D; // "HMCM"
+    private static final int VERSION = 1;
+
+    private static final byte CONV = 1;
+    private static final byte DENSE = 2;
+    private static final byte POOL = 3;
+
+    private final int inputSize;
+    private final float threshold;
+    // Normalized R, G, B of every palette byte
+    private final float[] palette = new float[256 * 3];
+    private final float[] mean = new float[3];
+    private final float[] std = new float[3];
+    private final Layer[] layers;
+    private final int outputs;
+    private final ThreadLocal<float[][]> scratch;
+
+    private MapCnnModel(int inputSize, float threshold, Layer[] layers, int outputs, int maxActivation) {
+        this.inputSize = inputSize;
+        this.threshold = threshold;
+        this.layers = layers;
+        this.outputs = outputs;
+        this.scratch = ThreadLocal.withInitial(() -> new float[][]{new float[maxActivation], new float[maxActivation]});
+    }
+
+    public static MapCnnModel load(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+            String name = path.getFileName().toString();
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(name + " is not a map classifier model");
+            }
+
+            int inputSize = in.readInt();
+            if (inputSize <= 0 || inputSize > MapPalette.MAP_SIZE || MapPalette.MAP_SIZE % inputSize != 0) {
+                throw new IOException(name + ": input size " + inputSize + " does not divide 128");
+            }
+            float[] mean = {in.readFloat(), in.readFloat(), in.readFloat()};
+            float[] std = {in.readFloat(), in.readFloat(), in.readFloat()};
+            float threshold = in.readFloat();
+
+            int count = in.readInt();
+            if (count <= 0 || count > 64) throw new IOException(name + ": bad layer count " + count);
+
+            // Track the activation shape to check every layer against the previous one
+            int channels = 3, height = inputSize, width = inputSize;
+            int maxActivation = channels * height * width;
+            List<Layer> layers = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Layer layer = switch (in.readByte()) {
+                    case CONV -> Conv.read(in, channels, height, width, name);
+                    case DENSE -> Dense.read(in, channels * height * width, i == count - 1, name);
+                    case POOL -> new Pool(channels, height, width);
+                    default -> throw new IOException(name + ": unknown layer type in layer " + i);
+                };
+                layers.add(layer);
+                channels = layer.channels();
+                height = layer.height();
+                width = layer.width();
+                maxActivation = Math.max(maxActivation, channels * height * width);
+            }
+
+            int outputs = channels * height * width;
+            if (outputs != 1 && outputs != 2) throw new IOException(name + ": model must end in 1 or 2 outputs");
+
+            MapCnnModel model = new MapCnnModel(inputSize, threshold, layers.toArray(new Layer[0]), outputs, maxActivation);
+            System.arraycopy(mean, 0, model.mean, 0, 3);
+            System.arraycopy(std, 0, model.std, 0, 3);
+            for (int color = 0; color < 256; color++) {
+                int rgb = MapPalette.rgb((byte) color);
+                model.palette[color * 3] = model.normalize(0, (rgb >> 16) & 0xFF);
+                model.palette[color * 3 + 1] = model.normalize(1, (rgb >> 8) & 0xFF);
+                model.palette[color * 3 + 2] = model.normalize(2, rgb & 0xFF);
+            }
+            return model;
+        }
+    }
+
+    /**
+     * The threshold the model was exported with
+     */
+    public float threshold() {
+        return threshold;
+    }
+
+    /**
+     * NSFW probability of a 128x128 palette array
+     */
+    public double predict(byte[] colors) {
+        float[][] buffers = scratch.get();
+        float[] input = buffers[0];
+        int factor = MapPalette.MAP_SIZE / inputSize;
+        int plane = inputSize * inputSize;
+        float norm = 1f / (factor * factor);
+
+        for (int y = 0; y < inputSize; y++) {
+            for (int x = 0; x < inputSize; x++) {
+                float r = 0, g = 0, b = 0;
+                for (int dy = 0; dy < factor; dy++) {
+                    int row = (y * factor + dy) * MapPalette.MAP_SIZE + x * factor;
+                    for (int dx = 0; dx < factor; dx++) {
+                        int p = (colors[row + dx] & 0xFF) * 3;
+                        r += palette[p];
+                        g += palette[p + 1];
+                        b += palette[p + 2];
+                    }
+                }
+                int i = y * inputSize + x;
+                input[i] = r * norm;
+                input[plane + i] = g * norm;
+                input[2 * plane + i] = b * norm;
+            }
+        }
+        return run(buffers);
+    }
+
+    /**
+     * NSFW probability of RGB pixels of any size, e.g. a stitched mosaic
+     */
+    public double predict(int[] pixels, int width, int height) {
+        float[][] buffers = scratch.get();
+        float[] input = buffers[0];
+        int plane = inputSize * inputSize;
+
+        for (int y = 0; y < inputSize; y++) {
+            int y0 = y * height / inputSize, y1 = Math.max(y0 + 1, (y + 1) * height / inputSize);
+            for (int x = 0; x < inputSize; x++) {
+                int x0 = x * width / inputSize, x1 = Math.max(x0 + 1, (x + 1) * width / inputSize);
+                float r = 0, g = 0, b = 0;
+                for (int sy = y0; sy < y1; sy++) {
+                    for (int sx = x0; sx < x1; sx++) {
+                        int rgb = pixels[sy * width + sx];
+                        r += (rgb >> 16) & 0xFF;
+                        g += (rgb >> 8) & 0xFF;
+                        b += rgb & 0xFF;
+                    }
+                }
+                float n = (y1 - y0) * (x1 - x0);
+                int i = y * inputSize + x;
+                input[i] = normalize(0, r / n);
+                input[plane + i] = normalize(1, g / n);
+                input[2 * plane + i] = normalize(2, b / n);
+            }
+        }
+        return run(buffers);
+    }
+
+    private float normalize(int channel, float value) {
+        return (value / 255f - mean[channel]) / std[channel];
+    }
+
+    private double run(float[][] buffers) {
+        float[] in = buffers[0];
+        float[] out = buffers[1];
+        for (Layer layer : layers) {
+            layer.forward(in, out);
+            float[] swap = in;
+            in = out;
+            out = swap;
+        }
+        if (outputs == 1) return 1 / (1 + Math.exp(-in[0]));
+        double max = Math.max(in[0], in[1]);
+        double safe = Math.exp(in[0] - max);
+        double nsfw = Math.exp(in[1] - max);
+        return nsfw / (safe + nsfw);
+    }
+
+    private interface Layer {
+        void forward(float[] in, float[] out);
+
+        int channels();
+
+        int height();
+
+        int width();
+    }
+
+    private static float[] readWeights(DataInputStream in, int outputs, int perOutput) throws IOException {
+        byte[] quantized = new byte[outputs * perOutput];
+        in.readFully(quantized);
+        float[] weights = new float[quantized.length];
+        float[] scales = new float[outputs];
+        for (int o = 0; o < outputs; o++) scales[o] = in.readFloat();
+        for (int o = 0; o < outputs; o++) {
+            for (int i = 0; i < perOutput; i++) {
+                weights[o * perOutput + i] = quantized[o * perOutput + i] * scales[o];
+            }
+        }
+        return weights;
+    }
+
+    private static float[] readBias(DataInputStream in, int outputs) throws IOException {
+        float[] bias = new float[outputs];
+        for (int o = 0; o < outputs; o++) bias[o] = in.readFloat();
+        return bias;
+    }
+
+    /**
+     * Weights are kept as [in][ky][kx][out] so the innermost loop runs over contiguous output
+     * channels, which the JIT vectorizes, accumulating one output pixel at a time
+     */
+    private record Conv(int inChannels, int inHeight, int inWidth, int outChannels, int kernel, int stride,
+                        int outHeight, int outWidth, float[] weights, float[] bias,
+                        ThreadLocal<float[]> accumulator) implements Layer {
+        static Conv read(DataInputStream in, int channels, int height, int width, String name) throws IOException {
+            int out = in.readInt(), inC = in.readInt(), kernel = in.readInt(), stride = in.readInt();
+            if (inC != channels || out <= 0 || out > 1024 || kernel <= 0 || kernel % 2 == 0 || kernel > 7
+                    || stride <= 0 || stride > 4) {
+                throw new IOException(name + ": conv layer does not fit a " + channels + "-channel input");
+            }
+            int taps = inC * kernel * kernel;
+            float[] weights = readWeights(in, out, taps);
+            float[] transposed = new float[weights.length];
+            for (int o = 0; o < out; o++) {
+                for (int t = 0; t < taps; t++) {
+                    transposed[t * out + o] = weights[o * taps + t];
+                }
+            }
+            float[] bias = readBias(in, out);
+            return new Conv(inC, height, width, out, kernel, stride,
+                    (height + stride - 1) / stride, (width + stride - 1) / stride, transposed, bias,
+                    ThreadLocal.withInitial(() -> new float[out]));
+        }
+
+        @Override
+        public void forward(float[] in, float[] out) {
+            int pad = kernel / 2;
+            int inPlane = inHeight * inWidth;
+            int outPlane = outHeight * outWidth;
+            float[] acc = accumulator.get();
+            for (int oy = 0; oy < outHeight; oy++) {
+                int y0 = oy * stride - pad;
+                int kyStart = Math.max(0, -y0), kyEnd = Math.min(kernel, inHeight - y0);
+                for (int ox = 0; ox < outWidth; ox++) {
+                    int x0 = ox * stride - pad;
+                    int kxStart = Math.max(0, -x0), kxEnd = Math.min(kernel, inWidth - x0);
+                    System.arraycopy(bias, 0, acc, 0, outChannels);
+                    for (int ic = 0; ic < inChannels; ic++) {
+                        int src = ic * inPlane + y0 * inWidth + x0;
+                        for (int ky = kyStart; ky < kyEnd; ky++) {
+                            for (int kx = kxStart; kx < kxEnd; kx++) {
+                                float value = in[src + ky * inWidth + kx];
+                                int w = ((ic * kernel + ky) * kernel + kx) * outChannels;
+                                for (int oc = 0; oc < outChannels; oc++) {
+                                    acc[oc] += weights[w + oc] * value;
+                                }
+                            }
+                        }
+                    }
+                    int pixel = oy * outWidth + ox;
+                    for (int oc = 0; oc < outChannels; oc++) {
+                        out[oc * outPlane + pixel] = Math.max(0, acc[oc]);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int channels() {
+            return outChannels;
+        }
+
+        @Override
+        public int height() {
+            return outHeight;
+        }
+
+        @Override
+        public int width() {
+            return outWidth;
+        }
+    }
+
+    private record Dense(int inputs, int outputs, boolean last, float[] weights, float[] bias) implements Layer {
+        static Dense read(DataInputStream in, int size, boolean last, String name) throws IOException {
+            int out = in.readInt(), inputs = in.readInt();
+            if (inputs != size || out <= 0 || out > 4096) {
+                throw new IOException(name + ": dense layer expects " + inputs + " inputs but gets " + size);
+            }
+            return new Dense(inputs, out, last, readWeights(in, out, inputs), readBias(in, out));
+        }
+
+        @Override
+        public void forward(float[] in, float[] out) {
+            for (int o = 0; o < outputs; o++) {
+                float sum = bias[o];
+                int base = o * inputs;
+                for (int i = 0; i < inputs; i++) {
+                    sum += weights[base + i] * in[i];
+                }
+                out[o] = last ? sum : Math.max(0, sum);
+            }
+        }
+
+        @Override
+        public int channels() {
+            return outputs;
+        }
+
+        @Override
+        public int height() {
+            return 1;
+        }
+
+        @Override
+        public int width() {
+            return 1;
+        }
+    }
+
+    private record Pool(int channels, int inHeight, int inWidth) implements Layer {
+        @Override
+        public void forward(float[] in, float[] out) {
+            int plane = inHeight * inWidth;
+            for (int c = 0; c < channels; c++) {
+                float sum = 0;
+                for (int i = c * plane, end = i + plane; i < end; i++) {
+                    sum += in[i];
+                }
+                out[c] = sum / plane;
+            }
+        }
+
+        @Override
+        public int height() {
+            return 1;
+        }
+
+        @Override
+        public int width() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package dev.hybridious.utils;
+
+import java.util.Arrays;
+
+/**
+ * Render decisions for the current frame, keyed by map ID.
+ *
+ * Open addressing over primitive arrays, so a lookup is a hash and a few array reads with no
+ * boxing. Each slot carries the epoch it was written in and {@link #invalidate()} just moves to
+ * a new epoch: slots from older epochs read as empty, so clearing is O(1) however many maps
+ * were drawn. Not thread-safe; the module only touches it from the client thread.
+ */
+public final class MapDecisionTable {
+    public static final int MISSING = -1;
+    public static final int BLOCK = 0;
+    public static final int RENDER = 1;
+
+    private int[] keys;
+    private int[] epochs;
+    private byte[] values;
+    private int mask;
+    private int size;
+    private int epoch = 1;
+
+    public MapDecisionTable(int expectedMaps) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedMaps * 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * {@link #RENDER}, {@link #BLOCK}, or {@link #MISSING} if not decided this epoch
+     */
+    public int get(int mapId) {
+        for (int slot = mix(mapId) & mask; ; slot = (slot + 1) & mask) {
+            if (epochs[slot] != epoch) return MISSING;
+            if (keys[slot] == mapId) return values[slot];
+        }
+    }
+
+    public void put(int mapId, boolean render) {
+        if (size * 2 >= keys.length) grow();
+        insert(mapId, (byte) (render ? RENDER : BLOCK));
+    }
+
+    public void invalidate() {
+        size = 0;
+        if (++epoch == 0) {
+            // Wrapped around: make sure no slot from 2^32 epochs ago looks current
+            Arrays.fill(epochs, 0);
+            epoch = 1;
+        }
+    }
+
+    private void insert(int mapId, byte value) {
+        int slot = mix(mapId) & mask;
+        while (epochs[slot] == epoch) {
+            if (keys[slot] == mapId) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = mapId;
+        epochs[slot] = epoch;
+        values[slot] = value;
+        size++;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldEpochs = epochs;
+        byte[] oldValues = values;
+        int current = epoch;
+
+        allocate(keys.length * 2);
+        epoch = 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldEpochs[i] == current) insert(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        epochs = new int[capacity];
+        values = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    // Map IDs are handed out sequentially; spread them so neighbours don't cluster
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
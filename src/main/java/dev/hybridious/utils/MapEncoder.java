@@ -0,0 +1,79 @@
+package dev.hybridious.utils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+
+/**
+ * Shared map encoding for classifier engines.
+ *
+ * Each thread keeps one PNG writer and one growable output buffer. The PNG is written
+ * through an in-memory image stream (plain {@code ImageIO.write} goes through a temp file
+ * cache), and Base64 reads the buffer in place instead of copying it out first.
+ */
+public final class MapEncoder {
+    private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(() -> new Buffer(16 * 1024));
+    private static final ThreadLocal<ImageWriter> PNG_WRITER = ThreadLocal.withInitial(() -> {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+        return writers.hasNext() ? writers.next() : null;
+    });
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        ByteBuffer view() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private MapEncoder() {
+    }
+
+    /**
+     * Render a 128x128 palette array and encode it as a Base64 PNG.
+     */
+    public static String toPngBase64(byte[] colors) throws IOException {
+        if (colors == null || colors.length < MapPalette.MAP_PIXELS) {
+            throw new IOException("Map colors array is " + (colors == null ? "null" : "too small: " + colors.length));
+        }
+        long start = System.nanoTime();
+        String encoded = encode(MapPalette.toImage(colors));
+        MapFilterMetrics.ENCODE.recordSince(start);
+        return encoded;
+    }
+
+    public static String toPngBase64(BufferedImage image) throws IOException {
+        long start = System.nanoTime();
+        String encoded = encode(image);
+        MapFilterMetrics.ENCODE.recordSince(start);
+        return encoded;
+    }
+
+    private static String encode(BufferedImage image) throws IOException {
+        ImageWriter writer = PNG_WRITER.get();
+        if (writer == null) throw new IOException("No PNG encoder available");
+
+        Buffer buffer = BUFFER.get();
+        buffer.reset();
+        try (ImageOutputStream out = new MemoryCacheImageOutputStream(buffer)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), null);
+        } finally {
+            writer.setOutput(null);
+        }
+
+        ByteBuffer encoded = Base64.getEncoder().encode(buffer.view());
+        return new String(encoded.array(), 0, encoded.limit(), StandardCharsets.ISO_8859_1);
+    }
+}
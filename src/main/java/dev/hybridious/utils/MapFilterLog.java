@@ -0,0 +1,61 @@
+package dev.hybridious.utils;
+
+/**
+ * Console logging for the map filter, gated by one global level.
+ *
+ * A disabled call is a volatile read and a compare. Messages about a single map take the map ID
+ * as an {@code int} so render-path calls build no string unless their level is on; anything with
+ * more parts should be wrapped in {@link #isEnabled} by the caller.
+ */
+public final class MapFilterLog {
+    private static final String PREFIX = "[MapFilter] ";
+
+    public enum Level {
+        Off,
+        Error,
+        Info,
+        Debug,
+        Trace
+    }
+
+    private static volatile int threshold = Level.Info.ordinal();
+
+    private MapFilterLog() {
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() <= threshold && level != Level.Off;
+    }
+
+    public static boolean isDebug() {
+        return threshold >= Level.Debug.ordinal();
+    }
+
+    public static boolean isTrace() {
+        return threshold >= Level.Trace.ordinal();
+    }
+
+    public static void error(String message) {
+        if (isEnabled(Level.Error)) System.err.println(PREFIX + message);
+    }
+
+    public static void info(String message) {
+        if (isEnabled(Level.Info)) System.out.println(PREFIX + message);
+    }
+
+    public static void debug(String message) {
+        if (isDebug()) System.out.println(PREFIX + message);
+    }
+
+    public static void debug(String message, int mapId) {
+        if (isDebug()) System.out.println(PREFIX + message + mapId);
+    }
+
+    public static void trace(String message, int mapId) {
+        if (isTrace()) System.out.println(PREFIX + message + mapId);
+    }
+}
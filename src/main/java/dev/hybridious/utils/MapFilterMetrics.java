@@ -0,0 +1,82 @@
+package dev.hybridious.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timings and counters for the map filter pipeline, shown by {@code .mapfilter perf}.
+ *
+ * Stages, in the order a new map goes through them: hashing its colors, looking the hash up in
+ * the verdict cache, waiting in the batch queue, encoding for the classifier, the HTTP round
+ * trip (which includes PNG encoding when bodies are streamed), the inference time the server
+ * reports, and the time from a verdict arriving to the first frame that applies it.
+ */
+public final class MapFilterMetrics {
+    public static final LatencyHistogram HASH = new LatencyHistogram("hash");
+    public static final LatencyHistogram CACHE_LOOKUP = new LatencyHistogram("cache lookup");
+    public static final LatencyHistogram QUEUE_WAIT = new LatencyHistogram("queue wait");
+    public static final LatencyHistogram ENCODE = new LatencyHistogram("encode");
+    public static final LatencyHistogram HTTP_ROUND_TRIP = new LatencyHistogram("http round-trip");
+    public static final LatencyHistogram SERVER_INFERENCE = new LatencyHistogram("server inference");
+    public static final LatencyHistogram VERDICT_TO_RENDER = new LatencyHistogram("verdict to render");
+
+    public static final LongAdder RENDER_CHECKS = new LongAdder();
+    public static final LongAdder DECISIONS_REUSED = new LongAdder();
+    public static final LongAdder MAPS_QUEUED = new LongAdder();
+    public static final LongAdder MAPS_DROPPED = new LongAdder();
+    public static final LongAdder MAPS_REJECTED = new LongAdder();
+    public static final LongAdder MAPS_SHARED = new LongAdder();
+    public static final LongAdder BATCHES_SENT = new LongAdder();
+    public static final LongAdder BATCHES_FAILED = new LongAdder();
+    public static final LongAdder BREAKER_TRIPS = new LongAdder();
+
+    private static final LatencyHistogram[] STAGES = {
+            HASH, CACHE_LOOKUP, QUEUE_WAIT, ENCODE, HTTP_ROUND_TRIP, SERVER_INFERENCE, VERDICT_TO_RENDER
+    };
+
+    private MapFilterMetrics() {
+    }
+
+    /**
+     * One line per stage with samples, then the counters
+     */
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (LatencyHistogram stage : STAGES) {
+            long count = stage.count();
+            if (count == 0) continue;
+            lines.add(String.format("%s: n=%d p50=%s p90=%s p99=%s max=%s", stage.name(), count,
+                    format(stage.percentile(0.50)), format(stage.percentile(0.90)),
+                    format(stage.percentile(0.99)), format(stage.max())));
+        }
+        if (lines.isEmpty()) lines.add("No timings recorded yet");
+
+        lines.add(String.format("Render checks: %d (%d reused) | Queued: %d | Dropped: %d | Held back: %d | " +
+                        "Shared: %d | Batches: %d (%d failed) | Breaker trips: %d",
+                RENDER_CHECKS.sum(), DECISIONS_REUSED.sum(), MAPS_QUEUED.sum(), MAPS_DROPPED.sum(),
+                MAPS_REJECTED.sum(), MAPS_SHARED.sum(), BATCHES_SENT.sum(), BATCHES_FAILED.sum(), BREAKER_TRIPS.sum()));
+        return lines;
+    }
+
+    public static void reset() {
+        for (LatencyHistogram stage : STAGES) {
+            stage.reset();
+        }
+        RENDER_CHECKS.reset();
+        DECISIONS_REUSED.reset();
+        MAPS_QUEUED.reset();
+        MAPS_DROPPED.reset();
+        MAPS_REJECTED.reset();
+        MAPS_SHARED.reset();
+        BATCHES_SENT.reset();
+        BATCHES_FAILED.reset();
+        BREAKER_TRIPS.reset();
+    }
+
+    private static String format(long nanos) {
+        if (nanos < 1_000_000) return String.format("%.1fus", nanos / 1e3);
+        if (nanos < 1_000_000_000) return String.format("%.1fms", nanos / 1e6);
+        return String.format("%.2fs", nanos / 1e9);
+    }
+}
@@ -6,123 +6,570 @@ import com.google.gson.reflect.TypeToken;
 import net.minecraft.item.map.MapState;
 
 import java.io.*;
-import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestException;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 
 public class MapHashCache {
     private static final String CACHE_DIR = "meteor-client/hybridious_mod";
     private static final String NSFW_CACHE = "nsfw_maps.json";
     private static final String SFW_CACHE = "sfw_maps.json";
+    private static final String JOURNAL = "verdicts.journal";
+    private static final String INDEX = "verdicts.index";
+    private static final String PERCEPTUAL = "perceptual.journal";
+    private static final String BUNDLES = "bundles";
+    private static final String LAST_EXPORT = "last_export";
+    private static final int COMPACT_MIN_RECORDS = 4096;
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 2000;
+    private static final int DEFAULT_FLUSH_THRESHOLD = 64;
+    private static final long EXPIRY_SWEEP_MS = TimeUnit.HOURS.toMillis(1);
+    // Evict down to this fraction of the cap, so eviction runs in occasional batches
+    private static final double EVICT_TO = 0.9;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final ThreadLocal<byte[]> DIGEST_OUT = ThreadLocal.withInitial(() -> new byte[MapHashKey.BYTES]);
 
-    private final Map<String, CacheEntry> nsfwCache = new ConcurrentHashMap<>();
-    private final Map<String, CacheEntry> sfwCache = new ConcurrentHashMap<>();
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
     private final Path cacheDir;
     private final Path nsfwPath;
     private final Path sfwPath;
+    private final Path bundleDir;
+    private final MapVerdictJournal journal;
+    private final MapVerdictIndex index;
+    private final MapPerceptualIndex perceptual;
+
+    // Write-behind state: hashes whose verdict changed since the last flush. Repeated
+    // updates to the same hash coalesce into one journal record.
+    private final Set<MapHashKey> dirty = ConcurrentHashMap.newKeySet();
+    private final Object persistLock = new Object();
+    // Writers hold the read side and close() the write side, so no verdict lands after the final flush
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private boolean closed;
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final int flushThreshold;
+    private final int maxEntries;
+    private final long ttlMs;
+    private final AtomicBoolean trimQueued = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final ScheduledExecutorService persister = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "MapFilter-Persist");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
 
     public static class CacheEntry {
         public double confidence;
         public String classification;
         public long timestamp;
+        public boolean manual;
 
         public CacheEntry(double confidence, String classification) {
+            this(confidence, classification, System.currentTimeMillis());
+        }
+
+        public CacheEntry(double confidence, String classification, long timestamp) {
             this.confidence = confidence;
             this.classification = classification;
-            this.timestamp = System.currentTimeMillis();
+            this.timestamp = timestamp;
         }
     }
 
     public MapHashCache(String minecraftDir) {
-        this.cacheDir = Paths.get(minecraftDir, CACHE_DIR);
+        this(minecraftDir, DEFAULT_FLUSH_INTERVAL_MS, DEFAULT_FLUSH_THRESHOLD);
+    }
+
+    /**
+     * Where the cache (and other MapFilter data, like the local model) lives
+     */
+    public static Path cacheDir(String minecraftDir) {
+        return Paths.get(minecraftDir, CACHE_DIR);
+    }
+
+    /**
+     * @param flushIntervalMs how often dirty verdicts are written out in the background
+     * @param flushThreshold dirty-entry count that triggers an early background flush
+     */
+    public MapHashCache(String minecraftDir, long flushIntervalMs, int flushThreshold) {
+        this(minecraftDir, flushIntervalMs, flushThreshold, 0, 0);
+    }
+
+    /**
+     * @param maxEntries verdicts to keep before evicting the least recently looked up
+     *                   automatic ones; 0 for no limit. Manual overrides are never evicted.
+     * @param ttlMs age after which automatic verdicts are dropped and re-checked; 0 for never
+     */
+    public MapHashCache(String minecraftDir, long flushIntervalMs, int flushThreshold, int maxEntries, long ttlMs) {
+        this.flushThreshold = Math.max(1, flushThreshold);
+        this.maxEntries = Math.max(0, maxEntries);
+        this.cacheDir = cacheDir(minecraftDir);
         this.nsfwPath = cacheDir.resolve(NSFW_CACHE);
         this.sfwPath = cacheDir.resolve(SFW_CACHE);
+        this.bundleDir = cacheDir.resolve(BUNDLES);
+        this.journal = new MapVerdictJournal(cacheDir.resolve(JOURNAL));
+        this.index = new MapVerdictIndex(cacheDir.resolve(INDEX));
+        this.perceptual = new MapPerceptualIndex(cacheDir.resolve(PERCEPTUAL));
 
         try {
             Files.createDirectories(cacheDir);
         } catch (IOException e) {
-            System.err.println("[MapFilter] Failed to create cache directory: " + e.getMessage());
+            MapFilterLog.error("Failed to create cache directory: " + e.getMessage());
         }
 
+        this.ttlMs = Math.max(0, ttlMs);
+        index.setTtl(ttlMs);
+        perceptual.setTtl(ttlMs);
         loadCache();
+
+        persister.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        if (ttlMs > 0) {
+            persister.scheduleWithFixedDelay(this::trim, 0, EXPIRY_SWEEP_MS, TimeUnit.MILLISECONDS);
+        } else if (this.maxEntries > 0 && (index.size() > this.maxEntries || perceptual.size() > this.maxEntries)) {
+            queueTrim();
+        }
+    }
+
+    /**
+     * Hash a map's color array. Reads {@code MapState.colors} directly (no reflection) and
+     * reuses a per-thread digest and output buffer, so the only allocation is the key itself.
+     */
+    public MapHashKey hashMap(MapState mapState) {
+        return mapState == null ? null : hashColors(mapState.colors);
     }
 
-    public String hashMap(MapState mapState) {
+    public static MapHashKey hashColors(byte[] colors) {
+        if (colors == null) return null;
+
+        long start = System.nanoTime();
+        MessageDigest digest = SHA256.get();
+        byte[] out = DIGEST_OUT.get();
         try {
-            byte[] colors = extractMapColors(mapState);
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(colors);
-            return Base64.getEncoder().encodeToString(hash);
-        } catch (Exception e) {
+            digest.update(colors);
+            digest.digest(out, 0, out.length);
+        } catch (DigestException e) {
+            digest.reset();
             return null;
         }
+        MapHashKey key = MapHashKey.fromBytes(out);
+        MapFilterMetrics.HASH.recordSince(start);
+        return key;
     }
 
-    public CacheEntry getCached(String hash) {
+    public CacheEntry getCached(MapHashKey hash) {
         if (hash == null) return null;
-        CacheEntry nsfw = nsfwCache.get(hash);
-        if (nsfw != null) return nsfw;
-        return sfwCache.get(hash);
+
+        int packed = index.lookup(hash.a, hash.b, hash.c, hash.d);
+        if (packed == MapVerdictIndex.NOT_FOUND) return null;
+
+        return toEntry(packed, index.timestamp(hash.a, hash.b, hash.c, hash.d));
     }
 
-    public Boolean isSafe(String hash) {
+    public Boolean isSafe(MapHashKey hash) {
         if (hash == null) return null;
-        if (nsfwCache.containsKey(hash)) return false;
-        if (sfwCache.containsKey(hash)) return true;
-        return null;
+
+        long start = System.nanoTime();
+        int packed = index.lookup(hash.a, hash.b, hash.c, hash.d);
+        MapFilterMetrics.CACHE_LOOKUP.recordSince(start);
+        if (packed == MapVerdictIndex.NOT_FOUND) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return (packed & MapVerdictIndex.FLAG_SAFE) != 0;
     }
 
-    public void cache(String hash, boolean isSafe, double confidence, String classification) {
-        if (hash == null) return;
+    /**
+     * Second-tier lookup: the closest blocked map within {@code maxDistance} bits of the given
+     * perceptual hash, or null if there is none. Meant for the validation thread after an
+     * exact miss.
+     */
+    public MapPerceptualIndex.Match nearestUnsafe(long perceptualHash, int maxDistance) {
+        return perceptual.nearestUnsafe(perceptualHash, maxDistance);
+    }
 
-        CacheEntry entry = new CacheEntry(confidence, classification);
+    /**
+     * Cache a map blocked as a near-duplicate. It is flagged as such, with the hashes'
+     * similarity as its confidence, so it can't pass for a classifier verdict. It takes the
+     * matched verdict's timestamp, so it expires with it instead of renewing it.
+     *
+     * @return false if the verdict couldn't be stored
+     */
+    public boolean cachePerceptualMatch(MapHashKey hash, MapPerceptualIndex.Match match) {
+        if (hash == null) return false;
+        double similarity = 1.0 - (double) match.distance() / Long.SIZE;
+        return put(hash, MapVerdictJournal.FLAG_PERCEPTUAL, similarity, match.timestamp());
+    }
 
-        // Remove from opposite cache first
-        if (isSafe) {
-            nsfwCache.remove(hash);
-            sfwCache.put(hash, entry);
-            saveCache(sfwPath, sfwCache);
-            saveCache(nsfwPath, nsfwCache);
-        } else {
-            sfwCache.remove(hash);
-            nsfwCache.put(hash, entry);
-            saveCache(nsfwPath, nsfwCache);
-            saveCache(sfwPath, sfwCache);
+    public void cachePerceptual(long perceptualHash, boolean isSafe, boolean manual) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) return;
+            perceptual.put(perceptualHash, flags(isSafe, manual), System.currentTimeMillis());
+            if (maxEntries > 0 && perceptual.size() > maxEntries) {
+                queueTrim();
+            }
+        } finally {
+            closeLock.readLock().unlock();
         }
     }
 
-    public void markSafe(String hash) {
-        if (hash == null) return;
+    /**
+     * Cache a classifier verdict. Only the verdict and confidence are stored, not
+     * {@code classification}; the label read back is derived from the flags.
+     *
+     * @return false if the verdict couldn't be stored
+     */
+    public boolean cache(MapHashKey hash, boolean isSafe, double confidence, String classification) {
+        if (hash == null) return false;
+        return put(hash, flags(isSafe, false), confidence, System.currentTimeMillis());
+    }
 
-        CacheEntry entry = new CacheEntry(1.0, "SFW (Manual Override)");
-        nsfwCache.remove(hash); // Remove from blacklist
-        sfwCache.put(hash, entry);
+    public boolean markSafe(MapHashKey hash) {
+        if (hash == null) return false;
+        return put(hash, flags(true, true), 1.0, System.currentTimeMillis());
+    }
 
-        saveCache(sfwPath, sfwCache);
-        saveCache(nsfwPath, nsfwCache);
+    public boolean markUnsafe(MapHashKey hash) {
+        if (hash == null) return false;
+        return put(hash, flags(false, true), 1.0, System.currentTimeMillis());
     }
 
-    public void markUnsafe(String hash) {
-        if (hash == null) return;
+    /**
+     * Store a verdict in the index and mark it for the journal. If the index can't take it, it is
+     * not marked either, so the journal never holds a verdict the index lost.
+     */
+    private boolean put(MapHashKey hash, byte flags, double confidence, long timestamp) {
+        closeLock.readLock().lock();
+        try {
+            // A batch still running when the module shuts down; its verdict is simply not kept
+            if (closed) return false;
+            try {
+                index.put(hash.a, hash.b, hash.c, hash.d, flags, confidence, timestamp);
+            } catch (IOException e) {
+                MapFilterLog.error("Failed to grow verdict index, verdict not cached: " + e.getMessage());
+                return false;
+            }
 
-        CacheEntry entry = new CacheEntry(1.0, "NSFW (Manual Blacklist)");
-        sfwCache.remove(hash); // Remove from whitelist
-        nsfwCache.put(hash, entry);
+            dirty.add(hash);
+            if (dirty.size() >= flushThreshold && flushQueued.compareAndSet(false, true)) {
+                persister.execute(() -> {
+                    flushQueued.set(false);
+                    flushQuietly();
+                });
+            }
+            if (maxEntries > 0 && index.size() > maxEntries) {
+                queueTrim();
+            }
+            return true;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
 
-        saveCache(nsfwPath, nsfwCache);
-        saveCache(sfwPath, sfwCache);
+    private void queueTrim() {
+        if (!trimQueued.compareAndSet(false, true)) return;
+        persister.execute(() -> {
+            trimQueued.set(false);
+            trim();
+        });
+    }
+
+    /**
+     * Drop expired verdicts, then evict least recently used automatic verdicts until the cache
+     * is back under its cap, and compact the journal so a replay can't bring them back.
+     * The perceptual index is expired and capped the same way, evicting its oldest verdicts.
+     * Runs on the persist thread.
+     */
+    private void trim() {
+        synchronized (persistLock) {
+            trimPerceptual();
+
+            int expired = index.expire();
+            int evicted = 0;
+            if (maxEntries > 0 && index.size() > maxEntries) {
+                evicted = index.evictLeastRecent(index.size() - (int) (maxEntries * EVICT_TO));
+            }
+            if (expired + evicted == 0) return;
+
+            expirations.add(expired);
+            evictions.add(evicted);
+            try {
+                journal.compact(index::forEach);
+            } catch (IOException e) {
+                MapFilterLog.error("Failed to compact " + JOURNAL + ": " + e.getMessage());
+            }
+            MapFilterLog.info("Cache trimmed: " + expired + " expired, " + evicted + " evicted, " +
+                    index.size() + " left");
+        }
+    }
+
+    private void trimPerceptual() {
+        try {
+            int expired = ttlMs > 0 ? perceptual.expire(System.currentTimeMillis() - ttlMs) : 0;
+            int evicted = 0;
+            if (maxEntries > 0 && perceptual.size() > maxEntries) {
+                evicted = perceptual.evictOldest(perceptual.size() - (int) (maxEntries * EVICT_TO));
+            }
+            if (expired + evicted == 0) return;
+
+            expirations.add(expired);
+            evictions.add(evicted);
+            MapFilterLog.info("Perceptual index trimmed: " + expired + " expired, " + evicted + " evicted, " +
+                    perceptual.size() + " left");
+        } catch (IOException e) {
+            MapFilterLog.error("Failed to trim " + PERCEPTUAL + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write every dirty verdict to the journal. Runs on the persist thread, except for the
+     * final flush in {@link #close()}.
+     */
+    public void flush() throws IOException {
+        synchronized (persistLock) {
+            if (!dirty.isEmpty()) {
+                byte[] digest = new byte[MapHashKey.BYTES];
+                for (MapHashKey hash : dirty) {
+                    // Cleared before the append so a put racing this flush marks it dirty again,
+                    // and restored if the append fails so the verdict is retried next flush
+                    dirty.remove(hash);
+
+                    int packed = index.lookup(hash.a, hash.b, hash.c, hash.d);
+                    if (packed == MapVerdictIndex.NOT_FOUND) continue;
+
+                    try {
+                        journal.append(hash.toBytes(digest), (byte) packed,
+                                MapVerdictIndex.confidenceOf((byte) (packed >>> 8)),
+                                index.timestamp(hash.a, hash.b, hash.c, hash.d));
+                    } catch (IOException e) {
+                        dirty.add(hash);
+                        throw e;
+                    }
+                }
+                journal.flush();
+            }
+            perceptual.flush();
+            maybeCompact();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            MapFilterLog.error("Failed to flush " + JOURNAL + ": " + e.getMessage());
+        }
     }
 
     private void loadCache() {
-        loadCacheFile(nsfwPath, nsfwCache);
-        loadCacheFile(sfwPath, sfwCache);
-        System.out.println("[MapFilter] Loaded cache: " + nsfwCache.size() + " NSFW, " + sfwCache.size() + " SFW");
+        perceptual.load();
+
+        boolean mapped = false;
+        try {
+            mapped = index.open();
+        } catch (IOException e) {
+            MapFilterLog.error("Failed to map " + INDEX + ": " + e.getMessage());
+        }
+
+        if (!mapped) {
+            if (journal.exists()) {
+                // Index missing or not closed cleanly - rebuild it from the journal
+                replayJournal();
+            } else {
+                // First run on the journal backend - migrate the legacy JSON files
+                importJson();
+            }
+        }
+
+        try {
+            journal.open();
+        } catch (IOException e) {
+            MapFilterLog.error("Failed to open " + JOURNAL + ": " + e.getMessage());
+        }
+
+        int safe = index.safeCount();
+        MapFilterLog.info("Loaded cache: " + (index.size() - safe) + " NSFW, " + safe + " SFW" +
+                (mapped ? " (mapped index)" : ""));
+    }
+
+    private void replayJournal() {
+        try {
+            journal.replay((digest, flags, confidence, timestamp) -> {
+                MapHashKey key = MapHashKey.fromBytes(digest);
+                try {
+                    index.put(key.a, key.b, key.c, key.d, flags, confidence, timestamp);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            MapFilterLog.error("Failed to replay " + JOURNAL + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Import sfw_maps.json / nsfw_maps.json from the cache directory.
+     */
+    public int importJson() {
+        Map<String, CacheEntry> nsfw = new HashMap<>();
+        Map<String, CacheEntry> sfw = new HashMap<>();
+        loadCacheFile(nsfwPath, nsfw);
+        loadCacheFile(sfwPath, sfw);
+
+        int[] imported = {0};
+        nsfw.forEach((hash, entry) -> {
+            if (importEntry(hash, false, entry)) imported[0]++;
+        });
+        sfw.forEach((hash, entry) -> {
+            if (importEntry(hash, true, entry)) imported[0]++;
+        });
+        return imported[0];
+    }
+
+    private boolean importEntry(String hash, boolean isSafe, CacheEntry entry) {
+        MapHashKey key = MapHashKey.fromBase64(hash);
+        if (key == null) return false;
+
+        boolean manual = entry.manual ||
+                (entry.classification != null && entry.classification.contains("(Manual "));
+        byte flags = flags(isSafe, manual);
+        if (!isSafe && !manual && entry.classification != null && entry.classification.contains("(Perceptual)")) {
+            flags |= MapVerdictJournal.FLAG_PERCEPTUAL;
+        }
+        return put(key, flags, entry.confidence, entry.timestamp);
+    }
+
+    /**
+     * Export the current verdicts as sfw_maps.json / nsfw_maps.json in the cache directory.
+     */
+    public void exportJson() {
+        Map<String, CacheEntry> nsfw = new LinkedHashMap<>();
+        Map<String, CacheEntry> sfw = new LinkedHashMap<>();
+        index.forEach((digest, flags, confidence, timestamp) -> {
+            boolean isSafe = (flags & MapVerdictJournal.FLAG_SAFE) != 0;
+            CacheEntry entry = toEntry(flags, confidence, timestamp);
+            (isSafe ? sfw : nsfw).put(Base64.getEncoder().encodeToString(digest), entry);
+        });
+        saveCache(nsfwPath, nsfw);
+        saveCache(sfwPath, sfw);
+    }
+
+    /**
+     * Write a verdict bundle to the bundles directory: everything, or with {@code delta} only
+     * verdicts newer than the previous export.
+     *
+     * @return the bundle written
+     */
+    public Path exportBundle(boolean delta, String key) throws IOException {
+        Files.createDirectories(bundleDir);
+        Path marker = bundleDir.resolve(LAST_EXPORT);
+        long since = 0;
+        if (delta && Files.exists(marker)) {
+            try {
+                since = Long.parseLong(Files.readString(marker).trim());
+            } catch (NumberFormatException e) {
+                MapFilterLog.error("Unreadable " + LAST_EXPORT + ", exporting everything: " + e.getMessage());
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        Path path = bundleDir.resolve((delta ? "delta-" : "full-") + now + MapVerdictBundle.EXTENSION);
+        int count = MapVerdictBundle.write(path, index::forEach, since, key);
+        Files.writeString(marker, Long.toString(now));
+
+        MapFilterLog.info("Exported " + count + " verdicts to " + path.getFileName());
+        return path;
+    }
+
+    /**
+     * Merge every bundle in the bundles directory. Bad or wrongly signed bundles are skipped.
+     * Without a key, bundles are only checksummed, which anyone can forge, so their verdicts are
+     * all merged as automatic: they can never add a manual override.
+     *
+     * @return how many cached verdicts changed
+     */
+    public int importBundles(String key) {
+        if (!Files.isDirectory(bundleDir)) return 0;
+        byte kept = MapVerdictIndex.FLAG_SAFE | MapVerdictIndex.FLAG_PERCEPTUAL;
+        if (key != null && !key.isEmpty()) kept |= MapVerdictIndex.FLAG_MANUAL;
+        byte keptFlags = kept;
+
+        List<Path> bundles;
+        try (Stream<Path> files = Files.list(bundleDir)) {
+            bundles = files.filter(path -> path.getFileName().toString().endsWith(MapVerdictBundle.EXTENSION))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            MapFilterLog.error("Failed to list " + BUNDLES + ": " + e.getMessage());
+            return 0;
+        }
+
+        int changed = 0;
+        for (Path bundle : bundles) {
+            try {
+                int[] merged = new int[1];
+                int total = MapVerdictBundle.read(bundle, key, (digest, flags, confidence, timestamp) -> {
+                    if (merge(MapHashKey.fromBytes(digest), (byte) (flags & keptFlags), confidence, timestamp)) {
+                        merged[0]++;
+                    }
+                });
+                changed += merged[0];
+                if (merged[0] > 0) {
+                    MapFilterLog.info("Merged " + merged[0] + "/" + total + " verdicts from " +
+                            bundle.getFileName());
+                }
+            } catch (IOException e) {
+                MapFilterLog.error("Skipping bundle " + e.getMessage());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Apply one incoming verdict. A manual override beats an automatic verdict either way round;
+     * otherwise the newer verdict wins.
+     */
+    private boolean merge(MapHashKey hash, byte flags, float confidence, long timestamp) {
+        int packed = index.lookup(hash.a, hash.b, hash.c, hash.d);
+        if (packed != MapVerdictIndex.NOT_FOUND) {
+            boolean localManual = (packed & MapVerdictIndex.FLAG_MANUAL) != 0;
+            boolean incomingManual = (flags & MapVerdictIndex.FLAG_MANUAL) != 0;
+            if (localManual != incomingManual) {
+                if (localManual) return false;
+            } else if (timestamp <= index.timestamp(hash.a, hash.b, hash.c, hash.d)) {
+                return false;
+            }
+        }
+
+        return put(hash, flags, confidence, timestamp);
     }
 
     private void loadCacheFile(Path path, Map<String, CacheEntry> cache) {
@@ -135,72 +582,131 @@ public class MapHashCache {
                 cache.putAll(loaded);
             }
         } catch (Exception e) {
-            System.err.println("[MapFilter] Failed to load " + path.getFileName() + ": " + e.getMessage());
+            MapFilterLog.error("Failed to load " + path.getFileName() + ": " + e.getMessage());
         }
     }
 
     private void saveCache(Path path, Map<String, CacheEntry> cache) {
-        try (Writer writer = new FileWriter(path.toFile())) {
-            gson.toJson(cache, writer);
+        // Write to a temp file and rename so a crash never leaves a truncated JSON file
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                gson.toJson(cache, writer);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (Exception e) {
-            System.err.println("[MapFilter] Failed to save " + path.getFileName() + ": " + e.getMessage());
+            MapFilterLog.error("Failed to save " + path.getFileName() + ": " + e.getMessage());
         }
     }
 
-    public void clear() {
-        nsfwCache.clear();
-        sfwCache.clear();
+    // Called with persistLock held, on the persist thread
+    private void maybeCompact() {
+        long live = index.size();
+        if (journal.getRecordCount() < Math.max(COMPACT_MIN_RECORDS, live * 2)) return;
+
+        try {
+            journal.compact(index::forEach);
+        } catch (IOException e) {
+            MapFilterLog.error("Failed to compact " + JOURNAL + ": " + e.getMessage());
+        }
+    }
+
+    private static CacheEntry toEntry(int packed, long timestamp) {
+        return toEntry((byte) packed, MapVerdictIndex.confidenceOf((byte) (packed >>> 8)), timestamp);
+    }
+
+    private static CacheEntry toEntry(byte flags, double confidence, long timestamp) {
+        boolean isSafe = (flags & MapVerdictJournal.FLAG_SAFE) != 0;
+        boolean manual = (flags & MapVerdictJournal.FLAG_MANUAL) != 0;
+        String classification = (flags & MapVerdictJournal.FLAG_PERCEPTUAL) != 0
+                ? "NSFW (Perceptual)" : classificationFor(isSafe, manual);
+        CacheEntry entry = new CacheEntry(confidence, classification, timestamp);
+        entry.manual = manual;
+        return entry;
+    }
+
+    private static byte flags(boolean isSafe, boolean manual) {
+        byte flags = 0;
+        if (isSafe) flags |= MapVerdictJournal.FLAG_SAFE;
+        if (manual) flags |= MapVerdictJournal.FLAG_MANUAL;
+        return flags;
+    }
+
+    private static String classificationFor(boolean isSafe, boolean manual) {
+        if (manual) return isSafe ? "SFW (Manual Override)" : "NSFW (Manual Blacklist)";
+        return isSafe ? "SFW" : "NSFW";
+    }
+
+    /**
+     * Stop the persist thread, write out anything still dirty and release the journal and index.
+     * Verdicts cached after this are dropped.
+     */
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        persister.shutdown();
         try {
-            Files.deleteIfExists(nsfwPath);
-            Files.deleteIfExists(sfwPath);
+            if (!persister.awaitTermination(5, TimeUnit.SECONDS)) {
+                persister.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            flush();
+            journal.close();
+            index.close();
         } catch (IOException e) {
-            System.err.println("[MapFilter] Failed to delete cache files: " + e.getMessage());
+            MapFilterLog.error("Failed to close " + JOURNAL + ": " + e.getMessage());
+        }
+    }
+
+    public void clear() {
+        synchronized (persistLock) {
+            dirty.clear();
+            index.clear();
+            try {
+                perceptual.clear();
+                journal.delete();
+                Files.deleteIfExists(nsfwPath);
+                Files.deleteIfExists(sfwPath);
+            } catch (IOException e) {
+                MapFilterLog.error("Failed to delete cache files: " + e.getMessage());
+            }
         }
     }
 
     public CacheStats getStats() {
-        return new CacheStats(nsfwCache.size() + sfwCache.size(), sfwCache.size(), nsfwCache.size());
+        int total = index.size();
+        int safe = index.safeCount();
+        return new CacheStats(total, safe, total - safe,
+                hits.sum(), misses.sum(), evictions.sum(), expirations.sum());
     }
 
     public static class CacheStats {
         public final int total;
         public final int safe;
         public final int blocked;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long expirations;
 
-        public CacheStats(int total, int safe, int blocked) {
+        public CacheStats(int total, int safe, int blocked, long hits, long misses, long evictions, long expirations) {
             this.total = total;
             this.safe = safe;
             this.blocked = blocked;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
         }
     }
-
-    private byte[] extractMapColors(MapState mapState) throws Exception {
-        try {
-            Field colorsField = MapState.class.getField("colors");
-            return (byte[]) colorsField.get(mapState);
-        } catch (Exception e1) {
-            try {
-                Field colorsField = MapState.class.getDeclaredField("colors");
-                colorsField.setAccessible(true);
-                return (byte[]) colorsField.get(mapState);
-            } catch (Exception e2) {
-                try {
-                    Field colorsField = MapState.class.getDeclaredField("field_122");
-                    colorsField.setAccessible(true);
-                    return (byte[]) colorsField.get(mapState);
-                } catch (Exception e3) {
-                    for (Field field : MapState.class.getDeclaredFields()) {
-                        if (field.getType().equals(byte[].class)) {
-                            field.setAccessible(true);
-                            byte[] array = (byte[]) field.get(mapState);
-                            if (array != null && array.length == 16384) {
-                                return array;
-                            }
-                        }
-                    }
-                    throw e3;
-                }
-            }
-        }
-    }
-}
\ No newline at end of file
+}
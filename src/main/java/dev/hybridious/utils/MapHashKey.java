@@ -0,0 +1,78 @@
+package dev.hybridious.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Base64;
+
+/**
+ * 256-bit SHA-256 digest of a map's color array, held as four longs.
+ *
+ * Used as the cache key everywhere instead of a Base64 string, so hashing, lookups and
+ * equality checks never build or compare text. {@link #toString()} still gives the Base64
+ * form used by the JSON import/export files.
+ */
+public final class MapHashKey {
+    public static final int BYTES = 32;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    public final long a;
+    public final long b;
+    public final long c;
+    public final long d;
+
+    public MapHashKey(long a, long b, long c, long d) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+    }
+
+    public static MapHashKey fromBytes(byte[] digest) {
+        if (digest == null || digest.length != BYTES) return null;
+        return new MapHashKey(
+                (long) LONGS.get(digest, 0),
+                (long) LONGS.get(digest, 8),
+                (long) LONGS.get(digest, 16),
+                (long) LONGS.get(digest, 24));
+    }
+
+    public static MapHashKey fromBase64(String hash) {
+        if (hash == null) return null;
+        try {
+            return fromBytes(Base64.getDecoder().decode(hash));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the digest big-endian into {@code out}, which must hold at least 32 bytes.
+     */
+    public byte[] toBytes(byte[] out) {
+        LONGS.set(out, 0, a);
+        LONGS.set(out, 8, b);
+        LONGS.set(out, 16, c);
+        LONGS.set(out, 24, d);
+        return out;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MapHashKey other)) return false;
+        return a == other.a && b == other.b && c == other.c && d == other.d;
+    }
+
+    @Override
+    public int hashCode() {
+        // SHA-256 output is already uniformly distributed
+        return (int) (a ^ (a >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return Base64.getEncoder().encodeToString(toBytes(new byte[BYTES]));
+    }
+}
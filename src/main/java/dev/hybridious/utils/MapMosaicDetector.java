@@ -0,0 +1,203 @@
+package dev.hybridious.utils;
+
+import net.minecraft.client.world.ClientWorld;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.MapIdComponent;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.decoration.ItemFrameEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Groups maps in item frames into multi-map mosaics (map art spanning several frames).
+ *
+ * Frames are bucketed by wall plane (facing + the coordinate along the facing axis), then
+ * 4-connected neighbours within a plane are flood-filled into one mosaic. A mosaic can be
+ * stitched into a single composite image so the classifier sees the whole artwork once
+ * instead of every tile separately.
+ */
+public class MapMosaicDetector {
+    private static final int MAP_SIZE = 128;
+
+    // Set while scanning so the item frame filter mixin doesn't hide or queue the maps
+    private static boolean scanning;
+
+    public static class Tile {
+        public final int mapId;
+        public final int u;
+        public final int v;
+        public final int rotation;
+
+        Tile(int mapId, int u, int v, int rotation) {
+            this.mapId = mapId;
+            this.u = u;
+            this.v = v;
+            this.rotation = rotation;
+        }
+    }
+
+    public static class Mosaic {
+        public final List<Tile> tiles = new ArrayList<>();
+        public int minU = Integer.MAX_VALUE;
+        public int maxU = Integer.MIN_VALUE;
+        public int minV = Integer.MAX_VALUE;
+        public int maxV = Integer.MIN_VALUE;
+        private String id;
+
+        /**
+         * Same for the same artwork across scans: each tile's map, place and rotation
+         */
+        public String id() {
+            String cached = id;
+            if (cached != null) return cached;
+
+            List<Tile> sorted = new ArrayList<>(tiles);
+            sorted.sort(Comparator.comparingInt((Tile tile) -> tile.v).thenComparingInt(tile -> tile.u));
+            StringBuilder key = new StringBuilder(sorted.size() * 12);
+            for (Tile tile : sorted) {
+                key.append(tile.u - minU).append(',').append(tile.v - minV).append(',')
+                        .append(tile.mapId).append(',').append(tile.rotation).append(';');
+            }
+            return id = key.toString();
+        }
+
+        public int width() {
+            return maxU - minU + 1;
+        }
+
+        public int height() {
+            return maxV - minV + 1;
+        }
+
+        void add(Tile tile) {
+            tiles.add(tile);
+            minU = Math.min(minU, tile.u);
+            maxU = Math.max(maxU, tile.u);
+            minV = Math.min(minV, tile.v);
+            maxV = Math.max(maxV, tile.v);
+        }
+    }
+
+    public static boolean isScanning() {
+        return scanning;
+    }
+
+    /**
+     * Find every mosaic of at least two frames. Must run on the client thread.
+     *
+     * @param maxSide mosaics wider or taller than this many frames are ignored
+     * @return map ID to the mosaic it belongs to
+     */
+    public static Map<Integer, Mosaic> detect(ClientWorld world, int maxSide) {
+        Map<Long, Map<Long, Tile>> planes = new HashMap<>();
+
+        scanning = true;
+        try {
+            for (Entity entity : world.getEntities()) {
+                if (!(entity instanceof ItemFrameEntity frame)) continue;
+
+                ItemStack stack = frame.getHeldItemStack();
+                if (stack == null || !stack.isOf(Items.FILLED_MAP)) continue;
+                MapIdComponent mapId = stack.get(DataComponentTypes.MAP_ID);
+                if (mapId == null) continue;
+
+                Direction facing = frame.getHorizontalFacing();
+                BlockPos pos = frame.getBlockPos();
+                int u, v, depth;
+                switch (facing) {
+                    case NORTH -> { u = -pos.getX(); v = pos.getY(); depth = pos.getZ(); }
+                    case SOUTH -> { u = pos.getX(); v = pos.getY(); depth = pos.getZ(); }
+                    case EAST -> { u = -pos.getZ(); v = pos.getY(); depth = pos.getX(); }
+                    case WEST -> { u = pos.getZ(); v = pos.getY(); depth = pos.getX(); }
+                    case UP -> { u = pos.getX(); v = -pos.getZ(); depth = pos.getY(); }
+                    default -> { u = pos.getX(); v = pos.getZ(); depth = pos.getY(); }
+                }
+
+                long plane = ((long) facing.ordinal() << 32) | (depth & 0xFFFFFFFFL);
+                planes.computeIfAbsent(plane, k -> new HashMap<>())
+                        .put(cell(u, v), new Tile(mapId.id(), u, v, frame.getRotation() & 3));
+            }
+        } finally {
+            scanning = false;
+        }
+
+        Map<Integer, Mosaic> result = new HashMap<>();
+        for (Map<Long, Tile> plane : planes.values()) {
+            Set<Long> seen = new HashSet<>();
+            for (Map.Entry<Long, Tile> start : plane.entrySet()) {
+                if (!seen.add(start.getKey())) continue;
+
+                Mosaic mosaic = new Mosaic();
+                ArrayDeque<Tile> queue = new ArrayDeque<>();
+                queue.add(start.getValue());
+                while (!queue.isEmpty()) {
+                    Tile tile = queue.poll();
+                    mosaic.add(tile);
+                    enqueue(plane, seen, queue, tile.u + 1, tile.v);
+                    enqueue(plane, seen, queue, tile.u - 1, tile.v);
+                    enqueue(plane, seen, queue, tile.u, tile.v + 1);
+                    enqueue(plane, seen, queue, tile.u, tile.v - 1);
+                }
+
+                if (mosaic.tiles.size() < 2 || mosaic.width() > maxSide || mosaic.height() > maxSide) continue;
+                for (Tile tile : mosaic.tiles) {
+                    result.put(tile.mapId, mosaic);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Render a mosaic into one image. Missing tiles (unknown map data) are left black.
+     */
+    public static BufferedImage stitch(Mosaic mosaic, IntFunction<byte[]> colorsById) {
+        int width = mosaic.width() * MAP_SIZE;
+        int height = mosaic.height() * MAP_SIZE;
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = MapPalette.pixels(image);
+
+        for (Tile tile : mosaic.tiles) {
+            byte[] colors = colorsById.apply(tile.mapId);
+            if (colors == null) continue;
+
+            int origin = (mosaic.maxV - tile.v) * MAP_SIZE * width + (tile.u - mosaic.minU) * MAP_SIZE;
+            if (tile.rotation == 0) {
+                MapPalette.write(colors, pixels, origin, width);
+                continue;
+            }
+
+            for (int z = 0; z < MAP_SIZE; z++) {
+                for (int x = 0; x < MAP_SIZE; x++) {
+                    // Frame rotation turns the map clockwise in quarter steps
+                    int px, py;
+                    switch (tile.rotation) {
+                        case 1 -> { px = MAP_SIZE - 1 - z; py = x; }
+                        case 2 -> { px = MAP_SIZE - 1 - x; py = MAP_SIZE - 1 - z; }
+                        default -> { px = z; py = MAP_SIZE - 1 - x; }
+                    }
+                    pixels[origin + py * width + px] = MapPalette.argb(colors[x + z * MAP_SIZE]);
+                }
+            }
+        }
+        return image;
+    }
+
+    private static void enqueue(Map<Long, Tile> plane, Set<Long> seen, ArrayDeque<Tile> queue, int u, int v) {
+        long key = cell(u, v);
+        Tile tile = plane.get(key);
+        if (tile != null && seen.add(key)) {
+            queue.add(tile);
+        }
+    }
+
+    private static long cell(int u, int v) {
+        return ((long) u << 32) | (v & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,94 @@
+package dev.hybridious.utils;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Map color palette as a precomputed 256-entry lookup table.
+ *
+ * Each map color byte is a base color index (upper six bits) plus a shade (lower two bits).
+ * The table is built once, so converting a map is one array read per pixel instead of a
+ * switch, an int[] allocation and three double multiplications.
+ *
+ * This is the one palette shared by every classifier engine, the mosaic stitcher and the
+ * perceptual hash.
+ */
+public final class MapPalette {
+    public static final int MAP_SIZE = 128;
+    public static final int MAP_PIXELS = MAP_SIZE * MAP_SIZE;
+
+    // Base RGB indexed by Minecraft's MapColor id (colorId >> 2); id 0 is "no color"
+    private static final int[] BASE_COLORS = {
+            0x000000, 0x7FB238, 0xF7E9A3, 0xC7C7C7, 0xFF0000, 0xA0A0FF, 0xA7A7A7, 0x007C00,
+            0xFFFFFF, 0xA4A8B8, 0x976D4D, 0x707070, 0x4040FF, 0x8F7748, 0xFFFCF5, 0xD87F33,
+            0xB24CD8, 0x6699D8, 0xE5E533, 0x7FCC19, 0xF27FA5, 0x4C4C4C, 0x999999, 0x4C7F99,
+            0x7F3FB2, 0x334CB2, 0x664C33, 0x667F33, 0x993333, 0x191919, 0xFAEE4D, 0x5CDBD5,
+            0x4A80FF, 0x00D93A, 0x815631, 0x700200, 0xD1B1A1, 0x9F5224, 0x95576C, 0x706C8A,
+            0xBA8524, 0x677535, 0xA04D4E, 0x392923, 0x876B62, 0x575C5C, 0x7A4958, 0x4C3E5C,
+            0x4C3223, 0x4C522A, 0x8E3C2E, 0x251610, 0xBD3031, 0x943F61, 0x5C191D, 0x167E86,
+            0x3A8E8C, 0x562C3E, 0x14B485, 0x646464, 0xD8AF93, 0x7FA796
+    };
+
+    // Brightness per shade (lower two bits), out of 255, as in MapColor.Brightness
+    private static final int[] SHADE_MULTIPLIERS = {180, 220, 255, 135};
+
+    // Opaque ARGB per color byte
+    private static final int[] ARGB = new int[256];
+
+    static {
+        for (int colorId = 4; colorId < 256; colorId++) {
+            int baseIndex = colorId >> 2;
+            int base = baseIndex < BASE_COLORS.length ? BASE_COLORS[baseIndex] : 0;
+            int multiplier = SHADE_MULTIPLIERS[colorId & 0x03];
+
+            int r = ((base >> 16) & 0xFF) * multiplier / 255;
+            int g = ((base >> 8) & 0xFF) * multiplier / 255;
+            int b = (base & 0xFF) * multiplier / 255;
+            ARGB[colorId] = 0xFF000000 | (r << 16) | (g << 8) | b;
+        }
+        for (int colorId = 0; colorId < 4; colorId++) {
+            ARGB[colorId] = 0xFF000000;
+        }
+    }
+
+    private MapPalette() {
+    }
+
+    public static int argb(byte colorByte) {
+        return ARGB[colorByte & 0xFF];
+    }
+
+    public static int rgb(byte colorByte) {
+        return ARGB[colorByte & 0xFF] & 0xFFFFFF;
+    }
+
+    /**
+     * Render a 128x128 color array into a new image by writing its backing int[] directly.
+     */
+    public static BufferedImage toImage(byte[] colors) {
+        BufferedImage image = new BufferedImage(MAP_SIZE, MAP_SIZE, BufferedImage.TYPE_INT_RGB);
+        write(colors, pixels(image), 0, MAP_SIZE);
+        return image;
+    }
+
+    /**
+     * Write a map row-major into {@code pixels} starting at {@code offset}, with
+     * {@code scanline} ints per destination row.
+     */
+    public static void write(byte[] colors, int[] pixels, int offset, int scanline) {
+        for (int z = 0; z < MAP_SIZE; z++) {
+            int src = z * MAP_SIZE;
+            int dst = offset + z * scanline;
+            for (int x = 0; x < MAP_SIZE; x++) {
+                pixels[dst + x] = ARGB[colors[src + x] & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * Backing pixel array of a TYPE_INT_RGB / TYPE_INT_ARGB image.
+     */
+    public static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
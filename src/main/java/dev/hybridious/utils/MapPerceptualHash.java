@@ -0,0 +1,102 @@
+package dev.hybridious.utils;
+
+import java.util.Arrays;
+
+/**
+ * 64-bit DCT perceptual hash (pHash) of a 128x128 map.
+ *
+ * The palette is decoded to luminance, box-downsampled to 32x32, and the lowest 8x8 DCT
+ * frequencies (minus DC) are thresholded against their median. Small edits such as a few
+ * changed pixels flip only a handful of bits, so near-duplicates land within a small
+ * Hamming distance of each other while an exact SHA-256 would miss them entirely.
+ */
+public final class MapPerceptualHash {
+    private static final int MAP_SIZE = 128;
+    private static final int SAMPLE = 32;
+    private static final int BLOCK = MAP_SIZE / SAMPLE;
+    private static final int LOW = 8;
+
+    private static final int[] LUMA = new int[256];
+    // COS[u][x] = cos((2x + 1) * u * PI / (2 * SAMPLE))
+    private static final double[][] COS = new double[LOW][SAMPLE];
+
+    private static final ThreadLocal<double[]> PIXELS = ThreadLocal.withInitial(() -> new double[SAMPLE * SAMPLE]);
+    private static final ThreadLocal<double[]> ROWS = ThreadLocal.withInitial(() -> new double[LOW * SAMPLE]);
+    private static final ThreadLocal<double[]> COEFFS = ThreadLocal.withInitial(() -> new double[LOW * LOW]);
+    private static final ThreadLocal<double[]> SORTED = ThreadLocal.withInitial(() -> new double[LOW * LOW - 1]);
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int rgb = MapPalette.rgb((byte) i);
+            int r = (rgb >> 16) & 0xFF;
+            int g = (rgb >> 8) & 0xFF;
+            int b = rgb & 0xFF;
+            LUMA[i] = (r * 299 + g * 587 + b * 114) / 1000;
+        }
+        for (int u = 0; u < LOW; u++) {
+            for (int x = 0; x < SAMPLE; x++) {
+                COS[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * SAMPLE));
+            }
+        }
+    }
+
+    private MapPerceptualHash() {
+    }
+
+    public static long compute(byte[] colors) {
+        if (colors == null || colors.length < MAP_SIZE * MAP_SIZE) return 0;
+
+        // Downsample 128x128 -> 32x32 by averaging 4x4 blocks
+        double[] pixels = PIXELS.get();
+        Arrays.fill(pixels, 0);
+        for (int z = 0; z < MAP_SIZE; z++) {
+            int row = (z / BLOCK) * SAMPLE;
+            int base = z * MAP_SIZE;
+            for (int x = 0; x < MAP_SIZE; x++) {
+                pixels[row + x / BLOCK] += LUMA[colors[base + x] & 0xFF];
+            }
+        }
+
+        // Separable 2D DCT-II, only the LOW x LOW lowest frequencies are needed
+        double[] rows = ROWS.get();
+        for (int v = 0; v < LOW; v++) {
+            double[] cos = COS[v];
+            for (int x = 0; x < SAMPLE; x++) {
+                double sum = 0;
+                for (int y = 0; y < SAMPLE; y++) {
+                    sum += pixels[y * SAMPLE + x] * cos[y];
+                }
+                rows[v * SAMPLE + x] = sum;
+            }
+        }
+        double[] coeffs = COEFFS.get();
+        for (int v = 0; v < LOW; v++) {
+            for (int u = 0; u < LOW; u++) {
+                double[] cos = COS[u];
+                double sum = 0;
+                for (int x = 0; x < SAMPLE; x++) {
+                    sum += rows[v * SAMPLE + x] * cos[x];
+                }
+                coeffs[v * LOW + u] = sum;
+            }
+        }
+
+        // Median of the AC coefficients (DC only carries overall brightness)
+        double[] sorted = SORTED.get();
+        System.arraycopy(coeffs, 1, sorted, 0, sorted.length);
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+
+        long hash = 0;
+        for (int i = 1; i < LOW * LOW; i++) {
+            if (coeffs[i] > median) {
+                hash |= 1L << i;
+            }
+        }
+        return hash;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
@@ -0,0 +1,383 @@
+package dev.hybridious.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BK-tree over 64-bit perceptual hashes of blocked maps, answering "is there a blocked map
+ * within Hamming distance k of this one". Each node's children are bucketed by their distance to the node,
+ * so the triangle inequality prunes every subtree that cannot contain a match.
+ *
+ * Verdicts are persisted to a small append-only file (a header, then 8-byte hash, flags and
+ * timestamp per record) that is replayed on load and written by the cache's write-behind flush.
+ * Like the exact-hash index, automatic verdicts expire after the TTL and the oldest are evicted
+ * over the cap; manual ones stay. Files from before timestamps were kept are converted on load,
+ * dated to the file's last write.
+ */
+public class MapPerceptualIndex {
+    private static final int COMPACT_MIN_RECORDS = 4096;
+    private static final int MAGIC = 0x484D504A; // "HMPJ"
+    private static final int VERSION = 1;
+
+    private final Path path;
+    private final List<long[]> pending = new ArrayList<>();
+    private Node root;
+    private int size;
+    private long records;
+    private long ttlMs;
+    // Still in the pre-timestamp format, so the next flush rewrites it rather than appending
+    private boolean legacyFile;
+
+    /**
+     * The closest blocked map found by {@link #nearestUnsafe}
+     *
+     * @param distance  Hamming distance in bits
+     * @param timestamp when that map's verdict was recorded
+     */
+    public record Match(int distance, long timestamp) {
+    }
+
+    @FunctionalInterface
+    private interface NodeFilter {
+        boolean keep(byte flags, long timestamp);
+    }
+
+    private static final class Node {
+        final long hash;
+        byte flags;
+        long timestamp;
+        byte[] childDistances = new byte[0];
+        Node[] children = new Node[0];
+
+        Node(long hash, byte flags, long timestamp) {
+            this.hash = hash;
+            this.flags = flags;
+            this.timestamp = timestamp;
+        }
+
+        Node child(int distance) {
+            for (int i = 0; i < childDistances.length; i++) {
+                if (childDistances[i] == distance) return children[i];
+            }
+            return null;
+        }
+
+        void addChild(int distance, Node node) {
+            int n = children.length;
+            childDistances = Arrays.copyOf(childDistances, n + 1);
+            children = Arrays.copyOf(children, n + 1);
+            childDistances[n] = (byte) distance;
+            children[n] = node;
+        }
+    }
+
+    public MapPerceptualIndex(Path path) {
+        this.path = path;
+    }
+
+    public synchronized void load() {
+        if (!Files.exists(path)) return;
+
+        boolean legacy = false;
+        try (InputStream in = Files.newInputStream(path);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024))) {
+            long legacyTimestamp = Files.getLastModifiedTime(path).toMillis();
+            long first;
+            try {
+                first = data.readLong();
+            } catch (EOFException e) {
+                return;
+            }
+            legacy = first != (((long) MAGIC << 32) | VERSION);
+
+            while (true) {
+                long hash;
+                byte flags;
+                long timestamp;
+                try {
+                    if (legacy && records == 0) {
+                        hash = first;
+                    } else {
+                        hash = data.readLong();
+                    }
+                    flags = data.readByte();
+                    timestamp = legacy ? legacyTimestamp : data.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                insert(hash, flags, timestamp);
+                records++;
+            }
+        } catch (IOException e) {
+            MapFilterLog.error("Failed to load " + path.getFileName() + ": " + e.getMessage());
+            return;
+        }
+
+        if (legacy) {
+            try {
+                compact();
+            } catch (IOException e) {
+                legacyFile = true;
+                MapFilterLog.error("Failed to convert " + path.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Treat automatic verdicts older than this as missing; 0 keeps them forever. Manual
+     * verdicts never expire.
+     */
+    public synchronized void setTtl(long ttlMs) {
+        this.ttlMs = Math.max(0, ttlMs);
+    }
+
+    /**
+     * Record a verdict for a perceptual hash. The latest verdict for an identical hash wins,
+     * except that an automatic verdict never replaces a manual one.
+     *
+     * Only blocked maps are worth indexing, so a safe verdict is recorded only when it
+     * overturns an existing blocked node. This keeps the tree to the (small) NSFW set.
+     */
+    public synchronized void put(long hash, byte flags, long timestamp) {
+        Node existing = find(hash);
+        if (existing == null && (flags & MapVerdictJournal.FLAG_SAFE) != 0) return;
+        if (existing != null && (existing.flags & MapVerdictJournal.FLAG_MANUAL) != 0
+                && (flags & MapVerdictJournal.FLAG_MANUAL) == 0) {
+            return;
+        }
+
+        insert(hash, flags, timestamp);
+        pending.add(new long[]{hash, flags, timestamp});
+    }
+
+    /**
+     * The closest map recorded as blocked within {@code maxDistance} bits of {@code hash}, or
+     * null if there is none. Automatic verdicts past the TTL don't count.
+     */
+    public synchronized Match nearestUnsafe(long hash, int maxDistance) {
+        if (root == null) return null;
+
+        long expiredBefore = ttlMs > 0 ? System.currentTimeMillis() - ttlMs : Long.MIN_VALUE;
+        Match nearest = null;
+
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            int distance = MapPerceptualHash.distance(hash, node.hash);
+            if (distance <= maxDistance && (node.flags & MapVerdictJournal.FLAG_SAFE) == 0
+                    && ((node.flags & MapVerdictJournal.FLAG_MANUAL) != 0 || node.timestamp >= expiredBefore)) {
+                nearest = new Match(distance, node.timestamp);
+                if (distance == 0) return nearest;
+                // Only closer matches are still of interest
+                maxDistance = distance - 1;
+            }
+
+            int low = distance - maxDistance;
+            int high = distance + maxDistance;
+            for (int i = 0; i < node.children.length; i++) {
+                int d = node.childDistances[i];
+                if (d >= low && d <= high) {
+                    stack.push(node.children[i]);
+                }
+            }
+        }
+        return nearest;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Remove automatic verdicts recorded before {@code cutoff}.
+     *
+     * @return how many were removed
+     */
+    public synchronized int expire(long cutoff) throws IOException {
+        return rebuildWithout((flags, timestamp) -> (flags & MapVerdictJournal.FLAG_MANUAL) != 0 || timestamp >= cutoff);
+    }
+
+    /**
+     * Remove the {@code count} oldest automatic verdicts. Manual verdicts are never evicted, so
+     * fewer may go if there aren't enough automatic ones.
+     *
+     * @return how many were removed
+     */
+    public synchronized int evictOldest(int count) throws IOException {
+        if (count <= 0 || root == null) return 0;
+
+        long[] timestamps = new long[size];
+        int n = 0;
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if ((node.flags & MapVerdictJournal.FLAG_MANUAL) == 0) timestamps[n++] = node.timestamp;
+            for (Node child : node.children) stack.push(child);
+        }
+        if (n == 0) return 0;
+
+        Arrays.sort(timestamps, 0, n);
+        long cutoff = timestamps[Math.min(count, n) - 1];
+        int olderThanCutoff = 0;
+        while (olderThanCutoff < n && timestamps[olderThanCutoff] < cutoff) olderThanCutoff++;
+        int[] atCutoffBudget = {Math.min(count, n) - olderThanCutoff};
+
+        return rebuildWithout((flags, timestamp) -> {
+            if ((flags & MapVerdictJournal.FLAG_MANUAL) != 0 || timestamp > cutoff) return true;
+            if (timestamp < cutoff) return false;
+            return atCutoffBudget[0]-- <= 0;
+        });
+    }
+
+    /**
+     * Append pending verdicts to disk, rewriting the file once superseded records dominate.
+     * Called from the cache's persist thread.
+     */
+    public void flush() throws IOException {
+        List<long[]> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            if (legacyFile) {
+                compact();
+                pending.clear();
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        try (OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+            if (Files.size(path) == 0) writeHeader(data);
+            for (long[] record : batch) {
+                data.writeLong(record[0]);
+                data.writeByte((int) record[1]);
+                data.writeLong(record[2]);
+            }
+        }
+
+        synchronized (this) {
+            records += batch.size();
+            if (records >= Math.max(COMPACT_MIN_RECORDS, size * 2L)) {
+                compact();
+            }
+        }
+    }
+
+    public synchronized void clear() throws IOException {
+        root = null;
+        size = 0;
+        records = 0;
+        pending.clear();
+        legacyFile = false;
+        Files.deleteIfExists(path);
+    }
+
+    private void compact() throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+            writeHeader(data);
+            if (root != null) {
+                ArrayDeque<Node> stack = new ArrayDeque<>();
+                stack.push(root);
+                while (!stack.isEmpty()) {
+                    Node node = stack.pop();
+                    data.writeLong(node.hash);
+                    data.writeByte(node.flags);
+                    data.writeLong(node.timestamp);
+                    for (Node child : node.children) stack.push(child);
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        records = size;
+        legacyFile = false;
+    }
+
+    private static void writeHeader(DataOutputStream data) throws IOException {
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+    }
+
+    /**
+     * Rebuild the tree from the nodes the filter keeps and rewrite the file to match, so a
+     * replay can't bring the others back. Removing nodes from a BK-tree in place would orphan
+     * their subtrees, and the tree is small, so it is simply rebuilt.
+     *
+     * @return how many nodes were dropped
+     */
+    private int rebuildWithout(NodeFilter keep) throws IOException {
+        if (root == null) return 0;
+
+        List<Node> kept = new ArrayList<>(size);
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (keep.keep(node.flags, node.timestamp)) kept.add(node);
+            for (Node child : node.children) stack.push(child);
+        }
+        int dropped = size - kept.size();
+        if (dropped == 0) return 0;
+
+        root = null;
+        size = 0;
+        for (Node node : kept) insert(node.hash, node.flags, node.timestamp);
+        // Everything pending is in the tree and goes out with the rewrite
+        pending.clear();
+        compact();
+        return dropped;
+    }
+
+    private Node find(long hash) {
+        Node node = root;
+        while (node != null) {
+            int distance = MapPerceptualHash.distance(hash, node.hash);
+            if (distance == 0) return node;
+            node = node.child(distance);
+        }
+        return null;
+    }
+
+    private void insert(long hash, byte flags, long timestamp) {
+        if (root == null) {
+            root = new Node(hash, flags, timestamp);
+            size = 1;
+            return;
+        }
+
+        Node node = root;
+        while (true) {
+            int distance = MapPerceptualHash.distance(hash, node.hash);
+            if (distance == 0) {
+                node.flags = flags;
+                node.timestamp = timestamp;
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, new Node(hash, flags, timestamp));
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+}
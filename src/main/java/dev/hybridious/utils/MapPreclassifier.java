@@ -0,0 +1,197 @@
+package dev.hybridious.utils;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Headless bulk classification of saved maps into a MapFilter cache, so clients start warm
+ * instead of sending every map on a server to the API on first login.
+ *
+ * Usage: {@code MapPreclassifier <minecraft-dir> <path>... [--api-url URL | --model FILE]
+ * [--threshold T] [--batch-size N] [--in-flight N]}. With {@code --model} the maps are
+ * classified in-process by {@link LocalMapClassifier} instead of the API. Each path is a {@code map_*.dat} file or a directory
+ * searched recursively (a world save, or a folder of archived {@code data/} dirs). Results go
+ * into {@code <minecraft-dir>/meteor-client/hybridious_mod}. Run with the mod's runtime
+ * classpath, e.g. {@code ./gradlew preclassifyMaps -Pargs="..."}.
+ *
+ * Files are read and hashed in parallel on a fork-join pool. Only one file per distinct hash is
+ * kept, and its colors are read again when its batch is sent, so memory stays flat however many
+ * maps the archive holds.
+ */
+public final class MapPreclassifier {
+    private static final String DEFAULT_API_URL = "http://127.0.0.1:5000";
+
+    private MapPreclassifier() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        String apiUrl = DEFAULT_API_URL;
+        Path model = null;
+        Double threshold = null;
+        int batchSize = 50;
+        int inFlight = 2;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--api-url" -> apiUrl = args[++i];
+                case "--model" -> model = Paths.get(args[++i]);
+                case "--threshold" -> threshold = Double.parseDouble(args[++i]);
+                case "--batch-size" -> batchSize = Math.max(1, Integer.parseInt(args[++i]));
+                case "--in-flight" -> inFlight = Math.max(1, Integer.parseInt(args[++i]));
+                default -> positional.add(args[i]);
+            }
+        }
+        if (positional.size() < 2) {
+            System.err.println("Usage: MapPreclassifier <minecraft-dir> <map file or dir>... " +
+                    "[--api-url URL | --model FILE] [--threshold T] [--batch-size N] [--in-flight N]");
+            System.exit(2);
+        }
+
+        List<Path> files = findMapFiles(positional.subList(1, positional.size()));
+        System.out.println("[MapFilter] Found " + files.size() + " map files");
+
+        MapHashCache hashCache = new MapHashCache(positional.get(0));
+        MapClassifier.Engine engine = model != null ? MapClassifier.Engine.Local : MapClassifier.Engine.Http;
+        try (MapClassifier classifier = MapClassifier.create(engine, apiUrl, true, model,
+                Runtime.getRuntime().availableProcessors())) {
+            Map<MapHashKey, Path> unknown = hashAll(files, hashCache);
+            System.out.println("[MapFilter] " + unknown.size() + " distinct maps not in the cache yet");
+            classifyAll(unknown, hashCache, classifier, threshold, batchSize, inFlight);
+
+            MapHashCache.CacheStats stats = hashCache.getStats();
+            System.out.println("[MapFilter] Cache now holds " + stats.total + " entries (" +
+                    stats.blocked + " blocked, " + stats.safe + " safe)");
+        } finally {
+            hashCache.close();
+        }
+    }
+
+    private static List<Path> findMapFiles(List<String> roots) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String root : roots) {
+            try (Stream<Path> walk = Files.walk(Paths.get(root))) {
+                walk.filter(Files::isRegularFile)
+                        .filter(path -> path.getFileName().toString().matches("map_\\d+\\.dat"))
+                        .forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Hash every file, keeping the first file seen per hash the cache doesn't know yet
+     */
+    private static Map<MapHashKey, Path> hashAll(List<Path> files, MapHashCache hashCache)
+            throws InterruptedException, ExecutionException {
+        Map<MapHashKey, Path> unknown = new ConcurrentHashMap<>();
+        AtomicInteger unreadable = new AtomicInteger();
+        AtomicInteger known = new AtomicInteger();
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            pool.submit(() -> files.parallelStream().forEach(path -> {
+                byte[] colors = readColors(path);
+                if (colors == null) {
+                    unreadable.incrementAndGet();
+                    return;
+                }
+                if (isBlank(colors)) return;
+
+                MapHashKey hash = MapHashCache.hashColors(colors);
+                if (hashCache.isSafe(hash) != null) {
+                    known.incrementAndGet();
+                    return;
+                }
+                unknown.putIfAbsent(hash, path);
+            })).get();
+        } finally {
+            pool.shutdown();
+        }
+
+        if (unreadable.get() > 0) {
+            System.err.println("[MapFilter] Skipped " + unreadable.get() + " unreadable map files");
+        }
+        System.out.println("[MapFilter] " + known.get() + " maps already cached");
+        return unknown;
+    }
+
+    private static void classifyAll(Map<MapHashKey, Path> unknown, MapHashCache hashCache, MapClassifier classifier,
+                                    Double threshold, int batchSize, int inFlight) throws InterruptedException {
+        List<Map.Entry<MapHashKey, Path>> entries = new ArrayList<>(unknown.entrySet());
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(inFlight);
+        for (int start = 0; start < entries.size(); start += batchSize) {
+            List<Map.Entry<MapHashKey, Path>> batch = entries.subList(start, Math.min(entries.size(), start + batchSize));
+            executor.submit(() -> {
+                try {
+                    classifyBatch(batch, hashCache, classifier, threshold);
+                } catch (Exception e) {
+                    failed.addAndGet(batch.size());
+                    System.err.println("[MapFilter] Batch failed: " + e.getMessage());
+                }
+                System.out.println("[MapFilter] " + done.addAndGet(batch.size()) + "/" + entries.size() + " classified");
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+        if (failed.get() > 0) {
+            System.err.println("[MapFilter] " + failed.get() + " maps got no verdict; run again to retry them");
+        }
+    }
+
+    private static void classifyBatch(List<Map.Entry<MapHashKey, Path>> batch, MapHashCache hashCache,
+                                      MapClassifier classifier, Double threshold) throws IOException {
+        // Keyed by position in the batch; the classifier only needs unique keys
+        Map<Integer, byte[]> maps = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            byte[] colors = readColors(batch.get(i).getValue());
+            if (colors != null) maps.put(i, colors);
+        }
+
+        Map<Integer, MapClassifier.Result> results = classifier.classify(maps, threshold);
+        for (Map.Entry<Integer, MapClassifier.Result> entry : results.entrySet()) {
+            MapClassifier.Result result = entry.getValue();
+            hashCache.cache(batch.get(entry.getKey()).getKey(), result.isSafe, result.confidence, result.classification);
+
+            long pHash = MapPerceptualHash.compute(maps.get(entry.getKey()));
+            if (pHash != 0) {
+                hashCache.cachePerceptual(pHash, result.isSafe, false);
+            }
+        }
+    }
+
+    /**
+     * The {@code data.colors} array of a map_N.dat file, or null if it has none
+     */
+    private static byte[] readColors(Path path) {
+        try {
+            NbtCompound root = NbtIo.readCompressed(path, NbtSizeTracker.ofUnlimitedBytes());
+            byte[] colors = root.getCompound("data").getByteArray("colors");
+            return colors.length == MapPalette.MAP_PIXELS ? colors : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Never-explored maps are all zeros and need no verdict
+    private static boolean isBlank(byte[] colors) {
+        for (byte color : colors) {
+            if (color != 0) return false;
+        }
+        return true;
+    }
+}
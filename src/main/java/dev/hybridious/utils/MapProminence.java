@@ -0,0 +1,56 @@
+package dev.hybridious.utils;
+
+import net.minecraft.client.render.Camera;
+import net.minecraft.entity.decoration.ItemFrameEntity;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * How prominent a map is on screen, as a sort key where lower means "validate sooner".
+ *
+ * A framed map's projected area shrinks with the square of its distance and with how
+ * obliquely its face is seen, so the key is {@code distance^2 / cos(viewing angle)}. Frames
+ * outside the view cone sort after everything on screen.
+ */
+public final class MapProminence {
+    public static final double HELD = 0;
+    public static final double UNKNOWN = 64 * 64;
+
+    private static final double OFF_SCREEN = 1e6;
+    // cos(60deg): roughly the edge of the default field of view
+    private static final double VIEW_CONE = 0.5;
+    private static final double MIN_FACING = 0.1;
+
+    private MapProminence() {
+    }
+
+    public static double ofFrame(Camera camera, ItemFrameEntity frame) {
+        if (camera == null) return UNKNOWN;
+
+        Vec3d eye = camera.getPos();
+        Vec3d pos = frame.getPos();
+        double dx = pos.x - eye.x;
+        double dy = pos.y - eye.y;
+        double dz = pos.z - eye.z;
+        double distanceSq = dx * dx + dy * dy + dz * dz;
+        if (distanceSq < 1e-4) return HELD;
+        double distance = Math.sqrt(distanceSq);
+
+        double yaw = Math.toRadians(camera.getYaw());
+        double pitch = Math.toRadians(camera.getPitch());
+        double lookX = -Math.sin(yaw) * Math.cos(pitch);
+        double lookY = -Math.sin(pitch);
+        double lookZ = Math.cos(yaw) * Math.cos(pitch);
+        if ((dx * lookX + dy * lookY + dz * lookZ) / distance < VIEW_CONE) {
+            return OFF_SCREEN + distanceSq;
+        }
+
+        // Face normal against the direction back to the eye
+        Direction facing = frame.getHorizontalFacing();
+        double facingCos = facing == null ? 1 :
+                -(facing.getOffsetX() * dx + facing.getOffsetY() * dy + facing.getOffsetZ() * dz) / distance;
+        if (facingCos <= 0) return OFF_SCREEN + distanceSq;
+
+        return distanceSq / Math.max(MIN_FACING, facingCos);
+    }
+}
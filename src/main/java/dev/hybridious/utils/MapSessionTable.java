@@ -0,0 +1,344 @@
+package dev.hybridious.utils;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Per-session state of every map seen: verdict, whether it is waiting on validation, and its
+ * content hash, in one concurrent table keyed by the primitive map ID.
+ *
+ * The table is split into stripes, each an open-addressing table over parallel arrays guarded
+ * by a {@link StampedLock}. Reads are optimistic (no lock, no allocation, retried under the
+ * read lock only if a write raced them), which is what the render thread does every frame;
+ * writes come from validation threads and take the stripe's write lock. Entries are never
+ * removed individually, only cleared wholesale, since a map ID seen once tends to be seen again.
+ */
+public final class MapSessionTable {
+    public static final int UNKNOWN = 0;
+    public static final int SAFE = 1;
+    public static final int BLOCKED = 2;
+
+    private static final int VERDICT_MASK = 0b11;
+    private static final int PENDING = 1 << 2;
+    // Marks a used slot, so state 0 means empty
+    private static final int PRESENT = 1 << 3;
+
+    private static final int STRIPE_BITS = 4;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    public MapSessionTable() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * {@link #SAFE}, {@link #BLOCKED} or {@link #UNKNOWN}
+     */
+    public int verdict(int mapId) {
+        return stateOf(mapId) & VERDICT_MASK;
+    }
+
+    public void setVerdict(int mapId, boolean isSafe) {
+        setVerdict(mapId, isSafe, 0);
+    }
+
+    /**
+     * @param decidedAt {@link System#nanoTime()} the verdict arrived at, for
+     *                  {@link #takeDecidedAt}, or 0 if it is applied right away
+     */
+    public void setVerdict(int mapId, boolean isSafe, long decidedAt) {
+        int hash = mix(mapId);
+        stripe(hash).setVerdict(mapId, hash, isSafe ? SAFE : BLOCKED, decidedAt);
+    }
+
+    /**
+     * When the map's verdict arrived, if it has not been rendered with it yet. Returns it once,
+     * then 0 until the next stamped verdict.
+     */
+    public long takeDecidedAt(int mapId) {
+        int hash = mix(mapId);
+        return stripe(hash).takeDecidedAt(mapId, hash);
+    }
+
+    public void clearVerdict(int mapId) {
+        int hash = mix(mapId);
+        Stripe stripe = stripe(hash);
+        if ((stripe.read(mapId, hash) & VERDICT_MASK) != UNKNOWN) {
+            stripe.update(mapId, hash, VERDICT_MASK, UNKNOWN);
+        }
+    }
+
+    public boolean isPending(int mapId) {
+        return (stateOf(mapId) & PENDING) != 0;
+    }
+
+    /**
+     * @return true if the map was not already pending
+     */
+    public boolean markPending(int mapId) {
+        int hash = mix(mapId);
+        return (stripe(hash).update(mapId, hash, PENDING, PENDING) & PENDING) == 0;
+    }
+
+    public void clearPending(int mapId) {
+        int hash = mix(mapId);
+        Stripe stripe = stripe(hash);
+        if ((stripe.read(mapId, hash) & PENDING) != 0) {
+            stripe.update(mapId, hash, PENDING, 0);
+        }
+    }
+
+    public MapHashKey hash(int mapId) {
+        int hash = mix(mapId);
+        return stripe(hash).hash(mapId, hash);
+    }
+
+    public void setHash(int mapId, MapHashKey key) {
+        int hash = mix(mapId);
+        stripe(hash).setHash(mapId, hash, key);
+    }
+
+    /**
+     * Forget every verdict, keeping pending flags and hashes, so maps are looked up again
+     */
+    public void resetVerdicts() {
+        for (Stripe stripe : stripes) {
+            stripe.mask(PRESENT | PENDING);
+        }
+    }
+
+    /**
+     * Forget every verdict and pending flag, keeping hashes (they only depend on map content)
+     */
+    public void clearVerdicts() {
+        for (Stripe stripe : stripes) {
+            stripe.mask(PRESENT);
+        }
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    private int stateOf(int mapId) {
+        int hash = mix(mapId);
+        return stripe(hash).read(mapId, hash);
+    }
+
+    private Stripe stripe(int hash) {
+        return stripes[hash >>> (32 - STRIPE_BITS)];
+    }
+
+    // Map IDs are handed out sequentially; spread them over stripes and slots alike
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Stripe {
+        private final StampedLock lock = new StampedLock();
+        private int[] keys;
+        private int[] states;
+        private MapHashKey[] hashes;
+        private long[] decidedAt;
+        private int size;
+
+        Stripe() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        int read(int mapId, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            int state = find(keys, states, mapId, hash);
+            if (lock.validate(stamp)) return state;
+
+            stamp = lock.readLock();
+            try {
+                return find(keys, states, mapId, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        MapHashKey hash(int mapId, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            MapHashKey key = findHash(mapId, hash);
+            if (lock.validate(stamp)) return key;
+
+            stamp = lock.readLock();
+            try {
+                return findHash(mapId, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Replace the {@code bits} of the map's state with {@code value}, returning the old state
+         */
+        int update(int mapId, int hash, int bits, int value) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slotFor(mapId, hash);
+                int old = states[slot];
+                states[slot] = (old & ~bits) | value | PRESENT;
+                return old;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void setVerdict(int mapId, int hash, int verdict, long time) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slotFor(mapId, hash);
+                states[slot] = (states[slot] & ~VERDICT_MASK) | verdict | PRESENT;
+                decidedAt[slot] = time;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        long takeDecidedAt(int mapId, int hash) {
+            // Almost always 0; only pay for the write lock when there is something to take
+            long stamp = lock.tryOptimisticRead();
+            long time = findDecidedAt(mapId, hash);
+            if (lock.validate(stamp) && time == 0) return 0;
+
+            stamp = lock.writeLock();
+            try {
+                time = findDecidedAt(mapId, hash);
+                if (time != 0) {
+                    // slotFor may grow the stripe, so index the array it leaves behind
+                    int slot = slotFor(mapId, hash);
+                    decidedAt[slot] = 0;
+                }
+                return time;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void setHash(int mapId, int hash, MapHashKey key) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = slotFor(mapId, hash);
+                states[slot] |= PRESENT;
+                hashes[slot] = key;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void mask(int keep) {
+            long stamp = lock.writeLock();
+            try {
+                for (int i = 0; i < states.length; i++) {
+                    if (states[i] != 0) states[i] &= keep;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                allocate(INITIAL_CAPACITY);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Probe without a lock. Arrays may be mid-resize when called optimistically, so the
+         * probe is bounded and the caller validates before trusting the result.
+         */
+        private static int find(int[] keys, int[] states, int mapId, int hash) {
+            int mask = Math.min(keys.length, states.length) - 1;
+            int slot = hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                int state = states[slot];
+                if (state == 0) return UNKNOWN;
+                if (keys[slot] == mapId) return state;
+                slot = (slot + 1) & mask;
+            }
+            return UNKNOWN;
+        }
+
+        private MapHashKey findHash(int mapId, int hash) {
+            int[] keys = this.keys;
+            int[] states = this.states;
+            MapHashKey[] hashes = this.hashes;
+            int mask = Math.min(keys.length, Math.min(states.length, hashes.length)) - 1;
+            int slot = hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                if (states[slot] == 0) return null;
+                if (keys[slot] == mapId) return hashes[slot];
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private long findDecidedAt(int mapId, int hash) {
+            int[] keys = this.keys;
+            int[] states = this.states;
+            long[] decidedAt = this.decidedAt;
+            int mask = Math.min(keys.length, Math.min(states.length, decidedAt.length)) - 1;
+            int slot = hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                if (states[slot] == 0) return 0;
+                if (keys[slot] == mapId) return decidedAt[slot];
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+
+        // Caller holds the write lock
+        private int slotFor(int mapId, int hash) {
+            if (size * 2 >= keys.length) grow();
+
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (states[slot] != 0) {
+                if (keys[slot] == mapId) return slot;
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = mapId;
+            size++;
+            return slot;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldStates = states;
+            MapHashKey[] oldHashes = hashes;
+            long[] oldDecidedAt = decidedAt;
+
+            allocate(oldKeys.length * 2);
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldStates[i] == 0) continue;
+                int slot = mix(oldKeys[i]) & mask;
+                while (states[slot] != 0) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                states[slot] = oldStates[i];
+                hashes[slot] = oldHashes[i];
+                decidedAt[slot] = oldDecidedAt[i];
+                size++;
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            states = new int[capacity];
+            hashes = new MapHashKey[capacity];
+            decidedAt = new long[capacity];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package dev.hybridious.utils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shareable file of verdicts, for warming other players' caches.
+ *
+ * Layout: a header ("HMVB", version, signed flag, creation time, the timestamp the bundle is a
+ * delta from or 0 for a full bundle, record count), then journal-format records sorted by
+ * digest, then a 32-byte trailer. The trailer is an HMAC-SHA256 of everything before
+ * it when the bundle is signed with a shared key, otherwise a plain SHA-256 checksum.
+ *
+ * Sorting makes bundles of the same verdicts byte-identical, and lets {@link #read} reject
+ * duplicated or reordered records. A bundle is only accepted if its trailer verifies with the
+ * reader's key, or with no key when the reader has none.
+ */
+public final class MapVerdictBundle {
+    public static final String EXTENSION = ".mvb";
+
+    private static final int MAGIC = 0x484D5642; // "HMVB"
+    private static final int VERSION = 1;
+    // magic, version, signed, created, since, count
+    private static final int HEADER_BYTES = 4 + 4 + 1 + 8 + 8 + 4;
+    private static final int TRAILER_BYTES = 32;
+    private static final String HMAC = "HmacSHA256";
+
+    private MapVerdictBundle() {
+    }
+
+    /**
+     * Write every record newer than {@code since} from {@code source}.
+     *
+     * @param key shared signing key, or null/empty for an unsigned bundle
+     * @return the number of records written
+     */
+    public static int write(Path path, MapVerdictJournal.RecordSource source, long since, String key) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        source.forEach((digest, flags, confidence, timestamp) -> {
+            if (timestamp <= since) return;
+            records.add(ByteBuffer.allocate(MapVerdictJournal.RECORD_BYTES)
+                    .put(digest).put(flags).putFloat(confidence).putLong(timestamp).array());
+        });
+        records.sort((x, y) -> Arrays.compareUnsigned(x, 0, MapVerdictJournal.DIGEST_BYTES,
+                y, 0, MapVerdictJournal.DIGEST_BYTES));
+
+        Signer signer = new Signer(key);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+            byte[] header = ByteBuffer.allocate(HEADER_BYTES)
+                    .putInt(MAGIC).putInt(VERSION).put((byte) (signer.signed ? 1 : 0))
+                    .putLong(System.currentTimeMillis()).putLong(since).putInt(records.size())
+                    .array();
+            out.write(header);
+            signer.update(header);
+            for (byte[] record : records) {
+                out.write(record);
+                signer.update(record);
+            }
+            out.write(signer.finish());
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return records.size();
+    }
+
+    /**
+     * Verify a bundle, then pass its records to the visitor. The file is read once, so the
+     * records visited are exactly the bytes that were verified, and nothing is visited unless
+     * the whole file checks out.
+     *
+     * @param key the shared key bundles must be signed with, or null/empty to accept only unsigned ones
+     * @return the number of records
+     */
+    public static int read(Path path, String key, MapVerdictJournal.RecordVisitor visitor) throws IOException {
+        ByteBuffer bundle = ByteBuffer.wrap(Files.readAllBytes(path));
+        int count = verify(bundle, path.getFileName().toString(), key);
+
+        bundle.position(HEADER_BYTES);
+        byte[] digest = new byte[MapVerdictJournal.DIGEST_BYTES];
+        for (int i = 0; i < count; i++) {
+            bundle.get(digest);
+            visitor.accept(digest, bundle.get(), bundle.getFloat(), bundle.getLong());
+        }
+        return count;
+    }
+
+    private static int verify(ByteBuffer bundle, String name, String key) throws IOException {
+        Signer signer = new Signer(key);
+        if (bundle.limit() < HEADER_BYTES) {
+            throw new IOException("Not a verdict bundle: " + name);
+        }
+
+        ByteBuffer view = bundle.duplicate();
+        if (view.getInt() != MAGIC || view.getInt() != VERSION) {
+            throw new IOException("Not a verdict bundle: " + name);
+        }
+        boolean signed = view.get() != 0;
+        if (signed != signer.signed) {
+            throw new IOException(name + (signed ? " is signed but no bundle key is set" :
+                    " is unsigned but a bundle key is set"));
+        }
+        view.getLong(); // created
+        view.getLong(); // since
+        int count = view.getInt();
+        long expectedSize = HEADER_BYTES + (long) count * MapVerdictJournal.RECORD_BYTES + TRAILER_BYTES;
+        if (count < 0 || bundle.limit() != expectedSize) {
+            throw new IOException(name + " is truncated or has trailing data");
+        }
+        signer.update(bundle.array(), 0, HEADER_BYTES);
+
+        byte[] array = bundle.array();
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_BYTES + i * MapVerdictJournal.RECORD_BYTES;
+            if (i > 0 && Arrays.compareUnsigned(array, offset - MapVerdictJournal.RECORD_BYTES,
+                    offset - MapVerdictJournal.RECORD_BYTES + MapVerdictJournal.DIGEST_BYTES,
+                    array, offset, offset + MapVerdictJournal.DIGEST_BYTES) >= 0) {
+                throw new IOException(name + " has unsorted or duplicate records");
+            }
+        }
+        int trailer = (int) expectedSize - TRAILER_BYTES;
+        signer.update(array, HEADER_BYTES, trailer - HEADER_BYTES);
+
+        if (!MessageDigest.isEqual(Arrays.copyOfRange(array, trailer, trailer + TRAILER_BYTES), signer.finish())) {
+            throw new IOException(name + (signer.signed ? " signature does not match the bundle key" :
+                    " checksum mismatch"));
+        }
+        return count;
+    }
+
+    /**
+     * HMAC-SHA256 under the shared key, or SHA-256 when there is none
+     */
+    private static final class Signer {
+        final boolean signed;
+        private final Mac mac;
+        private final MessageDigest digest;
+
+        Signer(String key) throws IOException {
+            signed = key != null && !key.isEmpty();
+            try {
+                if (signed) {
+                    mac = Mac.getInstance(HMAC);
+                    mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), HMAC));
+                    digest = null;
+                } else {
+                    mac = null;
+                    digest = MessageDigest.getInstance("SHA-256");
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Bundle signing unavailable: " + e.getMessage(), e);
+            }
+        }
+
+        void update(byte[] bytes) {
+            if (signed) mac.update(bytes);
+            else digest.update(bytes);
+        }
+
+        void update(byte[] bytes, int offset, int length) {
+            if (signed) mac.update(bytes, offset, length);
+            else digest.update(bytes, offset, length);
+        }
+
+        byte[] finish() {
+            return signed ? mac.doFinal() : digest.digest();
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package dev.hybridious.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Memory-mapped, open-addressed (linear probing) table of map verdicts keyed by SHA-256 digest.
+ *
+ * The digest is stored as four longs followed by packed flag/confidence bytes, the minute the
+ * entry was last looked up and a timestamp, 48 bytes per slot. Lookups read the mapped file
+ * directly under an optimistic lock, so they never allocate and the table costs next to nothing
+ * on the heap. A file closed cleanly is
+ * mapped and used as-is on the next start; anything else is reported as needing a rebuild.
+ */
+public class MapVerdictIndex implements Closeable {
+    public static final int NOT_FOUND = -1;
+
+    public static final byte FLAG_SAFE = MapVerdictJournal.FLAG_SAFE;
+    public static final byte FLAG_MANUAL = MapVerdictJournal.FLAG_MANUAL;
+    public static final byte FLAG_PERCEPTUAL = MapVerdictJournal.FLAG_PERCEPTUAL;
+    private static final byte FLAG_OCCUPIED = (byte) 0x80;
+    // Set on a lookup result whose access minute is out of date; never returned to callers
+    private static final int ACCESS_STALE = 1 << 16;
+
+    private static final int MAGIC = 0x484D5649; // "HMVI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 48;
+    private static final int MIN_CAPACITY = 4096;
+
+    // Header offsets
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_SIZE = 12;
+    private static final int H_SAFE = 16;
+    private static final int H_CLEAN = 20;
+
+    // Slot offsets
+    private static final int S_FLAGS = 32;
+    private static final int S_CONFIDENCE = 33;
+    private static final int S_ACCESSED = 34;
+    private static final int S_TIMESTAMP = 40;
+
+    private final Path path;
+    private final StampedLock lock = new StampedLock();
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private volatile long ttlMs;
+    private boolean loadedClean;
+
+    @FunctionalInterface
+    private interface SlotFilter {
+        boolean keep(byte flags, int accessedMinute, long timestamp);
+    }
+
+    public MapVerdictIndex(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Map the index file. Returns true if an existing, cleanly closed index was mapped; false
+     * if the table was (re)created empty and the caller should repopulate it.
+     */
+    public boolean open() throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            loadedClean = false;
+
+            if (channel.size() >= HEADER_BYTES) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                channel.read(header, 0);
+                int capacity = header.getInt(H_CAPACITY);
+                loadedClean = header.getInt(H_MAGIC) == MAGIC
+                        && header.getInt(H_VERSION) == VERSION
+                        && header.getInt(H_CLEAN) == 1
+                        && Integer.bitCount(capacity) == 1
+                        && channel.size() == fileSize(capacity);
+                if (loadedClean) {
+                    map(capacity);
+                }
+            }
+
+            if (!loadedClean) {
+                channel.truncate(0);
+                map(MIN_CAPACITY);
+                buffer.putInt(H_MAGIC, MAGIC);
+                buffer.putInt(H_VERSION, VERSION);
+                buffer.putInt(H_CAPACITY, MIN_CAPACITY);
+            }
+
+            // Marked clean again only by close(); a crash leaves it dirty and forces a rebuild
+            buffer.putInt(H_CLEAN, 0);
+            buffer.force();
+            return loadedClean;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean wasLoadedClean() {
+        return loadedClean;
+    }
+
+    /**
+     * Treat automatic verdicts older than this as missing; 0 keeps them forever. Manual
+     * overrides never expire.
+     */
+    public void setTtl(long ttlMs) {
+        this.ttlMs = Math.max(0, ttlMs);
+    }
+
+    /**
+     * Find a digest. Returns {@link #NOT_FOUND}, or {@code (confidenceByte << 8) | flags}.
+     * Safe to call from any thread; does not allocate.
+     */
+    public int lookup(long a, long b, long c, long d) {
+        int result = find(a, b, c, d);
+        if (result != NOT_FOUND && (result & ACCESS_STALE) != 0) {
+            touch(a, b, c, d);
+            result &= ~ACCESS_STALE;
+        }
+        return result;
+    }
+
+    private int find(long a, long b, long c, long d) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int result = lookupUnlocked(a, b, c, d);
+                if (lock.validate(stamp)) return result;
+            } catch (IndexOutOfBoundsException ignored) {
+                // Raced a grow; retry under the read lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return lookupUnlocked(a, b, c, d);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Record the minute an entry was looked up, for eviction. Needed at most once a minute per
+     * entry, so when the write lock is busy it is skipped rather than waited for; the next
+     * lookup tries again.
+     */
+    private void touch(long a, long b, long c, long d) {
+        long stamp = lock.tryWriteLock();
+        if (stamp == 0) return;
+        try {
+            MappedByteBuffer buf = buffer;
+            int slot = findSlot(buf, a, b, c, d);
+            if (slot >= 0) {
+                buf.putInt(slotOffset(slot) + S_ACCESSED, minuteOf(System.currentTimeMillis()));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public long timestamp(long a, long b, long c, long d) {
+        long stamp = lock.readLock();
+        try {
+            MappedByteBuffer buf = buffer;
+            int slot = findSlot(buf, a, b, c, d);
+            return slot < 0 ? 0 : buf.getLong(slotOffset(slot) + S_TIMESTAMP);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Remove automatic verdicts past the TTL.
+     *
+     * @return how many were removed
+     */
+    public int expire() {
+        long ttl = ttlMs;
+        if (ttl <= 0) return 0;
+        long cutoff = System.currentTimeMillis() - ttl;
+        return rebuildWithout((flags, accessed, timestamp) -> (flags & FLAG_MANUAL) != 0 || timestamp >= cutoff);
+    }
+
+    /**
+     * Remove the {@code count} least recently looked up automatic verdicts. Manual overrides
+     * are never evicted, so fewer may go if there aren't enough automatic ones.
+     *
+     * @return how many were removed
+     */
+    public int evictLeastRecent(int count) {
+        if (count <= 0) return 0;
+
+        // Find the access minute at which enough entries are older, then evict up to the count
+        int[] accessed;
+        long stamp = lock.readLock();
+        try {
+            MappedByteBuffer buf = buffer;
+            accessed = new int[size()];
+            int n = 0;
+            for (int offset = HEADER_BYTES; offset < buf.capacity() && n < accessed.length; offset += SLOT_BYTES) {
+                byte flags = buf.get(offset + S_FLAGS);
+                if ((flags & FLAG_OCCUPIED) == 0 || (flags & FLAG_MANUAL) != 0) continue;
+                accessed[n++] = buf.getInt(offset + S_ACCESSED);
+            }
+            accessed = Arrays.copyOf(accessed, n);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (accessed.length == 0) return 0;
+
+        Arrays.sort(accessed);
+        int cutoff = accessed[Math.min(count, accessed.length) - 1];
+        int olderThanCutoff = 0;
+        while (olderThanCutoff < accessed.length && accessed[olderThanCutoff] < cutoff) olderThanCutoff++;
+        int[] atCutoffBudget = {Math.min(count, accessed.length) - olderThanCutoff};
+
+        return rebuildWithout((flags, minute, timestamp) -> {
+            if ((flags & FLAG_MANUAL) != 0 || minute > cutoff) return true;
+            if (minute < cutoff) return false;
+            return atCutoffBudget[0]-- <= 0;
+        });
+    }
+
+    /**
+     * @throws IOException if the table was full and couldn't be grown; nothing is written then
+     */
+    public void put(long a, long b, long c, long d, byte flags, double confidence, long timestamp) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            if ((size() + 1) * 4L > (maskOf(buffer) + 1) * 3L) {
+                grow();
+            }
+
+            MappedByteBuffer buf = buffer;
+            int mask = maskOf(buf);
+            int slot = (int) a & mask;
+            while (true) {
+                int offset = slotOffset(slot);
+                byte existing = buf.get(offset + S_FLAGS);
+                if ((existing & FLAG_OCCUPIED) == 0) {
+                    writeSlot(buf, offset, a, b, c, d, flags, confidence, timestamp);
+                    buf.putInt(H_SIZE, buf.getInt(H_SIZE) + 1);
+                    if ((flags & FLAG_SAFE) != 0) buf.putInt(H_SAFE, buf.getInt(H_SAFE) + 1);
+                    return;
+                }
+                if (matches(buf, offset, a, b, c, d)) {
+                    int safeDelta = ((flags & FLAG_SAFE) != 0 ? 1 : 0) - ((existing & FLAG_SAFE) != 0 ? 1 : 0);
+                    writeSlot(buf, offset, a, b, c, d, flags, confidence, timestamp);
+                    buf.putInt(H_SAFE, buf.getInt(H_SAFE) + safeDelta);
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        return buffer.getInt(H_SIZE);
+    }
+
+    public int safeCount() {
+        return buffer.getInt(H_SAFE);
+    }
+
+    /**
+     * Visit every entry as a journal record. The digest array is reused between calls.
+     */
+    public void forEach(MapVerdictJournal.RecordVisitor visitor) {
+        long stamp = lock.readLock();
+        try {
+            MappedByteBuffer buf = buffer;
+            byte[] digest = new byte[MapVerdictJournal.DIGEST_BYTES];
+            ByteBuffer digestView = ByteBuffer.wrap(digest);
+            int mask = maskOf(buf);
+            for (int slot = 0; slot <= mask; slot++) {
+                int offset = slotOffset(slot);
+                byte flags = buf.get(offset + S_FLAGS);
+                if ((flags & FLAG_OCCUPIED) == 0) continue;
+
+                digestView.putLong(0, buf.getLong(offset));
+                digestView.putLong(8, buf.getLong(offset + 8));
+                digestView.putLong(16, buf.getLong(offset + 16));
+                digestView.putLong(24, buf.getLong(offset + 24));
+                visitor.accept(digest, (byte) (flags & ~FLAG_OCCUPIED),
+                        confidenceOf(buf.get(offset + S_CONFIDENCE)), buf.getLong(offset + S_TIMESTAMP));
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            MappedByteBuffer buf = buffer;
+            for (int offset = HEADER_BYTES; offset < buf.capacity(); offset += SLOT_BYTES) {
+                buf.put(offset + S_FLAGS, (byte) 0);
+            }
+            buf.putInt(H_SIZE, 0);
+            buf.putInt(H_SAFE, 0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Flush the mapping and mark the file clean so the next start can map it directly.
+     */
+    @Override
+    public void close() throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            if (channel == null) return;
+            buffer.force();
+            buffer.putInt(H_CLEAN, 1);
+            buffer.force();
+            channel.close();
+            channel = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public static float confidenceOf(byte packed) {
+        return (packed & 0xFF) / 255f;
+    }
+
+    private int lookupUnlocked(long a, long b, long c, long d) {
+        MappedByteBuffer buf = buffer;
+        int slot = findSlot(buf, a, b, c, d);
+        if (slot < 0) return NOT_FOUND;
+
+        int offset = slotOffset(slot);
+        int flags = buf.get(offset + S_FLAGS) & ~FLAG_OCCUPIED & 0xFF;
+        long now = System.currentTimeMillis();
+        long ttl = ttlMs;
+        if (ttl > 0 && (flags & FLAG_MANUAL) == 0 && buf.getLong(offset + S_TIMESTAMP) < now - ttl) {
+            return NOT_FOUND;
+        }
+
+        int confidence = buf.get(offset + S_CONFIDENCE) & 0xFF;
+        int result = (confidence << 8) | flags;
+        // Read-only here; lookup() writes the new minute under the write lock
+        return buf.getInt(offset + S_ACCESSED) != minuteOf(now) ? result | ACCESS_STALE : result;
+    }
+
+    private static int minuteOf(long millis) {
+        return (int) (millis / 60_000);
+    }
+
+    private static int findSlot(MappedByteBuffer buf, long a, long b, long c, long d) {
+        int mask = maskOf(buf);
+        int slot = (int) a & mask;
+        // Bounded probe so a torn optimistic read can never spin forever
+        for (int probes = 0; probes <= mask; probes++) {
+            int offset = slotOffset(slot);
+            if ((buf.get(offset + S_FLAGS) & FLAG_OCCUPIED) == 0) return -1;
+            if (matches(buf, offset, a, b, c, d)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static boolean matches(MappedByteBuffer buf, int offset, long a, long b, long c, long d) {
+        return buf.getLong(offset) == a && buf.getLong(offset + 8) == b
+                && buf.getLong(offset + 16) == c && buf.getLong(offset + 24) == d;
+    }
+
+    private static void writeSlot(MappedByteBuffer buf, int offset, long a, long b, long c, long d,
+                                  byte flags, double confidence, long timestamp) {
+        buf.putLong(offset, a);
+        buf.putLong(offset + 8, b);
+        buf.putLong(offset + 16, c);
+        buf.putLong(offset + 24, d);
+        buf.put(offset + S_CONFIDENCE, (byte) Math.round(Math.max(0, Math.min(1, confidence)) * 255));
+        buf.putInt(offset + S_ACCESSED, minuteOf(System.currentTimeMillis()));
+        buf.putLong(offset + S_TIMESTAMP, timestamp);
+        buf.put(offset + S_FLAGS, (byte) (flags | FLAG_OCCUPIED));
+    }
+
+    /**
+     * Double the table in place. Keeps memory flat and never renames a mapped file.
+     */
+    private void grow() throws IOException {
+        rebuild((maskOf(buffer) + 1) * 2, (flags, accessed, timestamp) -> true);
+    }
+
+    /**
+     * Rebuild at the same size without the slots the filter rejects
+     *
+     * @return how many slots were dropped
+     */
+    private int rebuildWithout(SlotFilter keep) {
+        long stamp = lock.writeLock();
+        try {
+            int before = size();
+            rebuild(maskOf(buffer) + 1, keep);
+            return before - size();
+        } catch (IOException e) {
+            MapFilterLog.error("Failed to rebuild verdict index: " + e.getMessage());
+            return 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copy the kept slots out to a scratch file, remap the index at {@code newCapacity} and
+     * reinsert them. Caller holds the write lock.
+     */
+    private void rebuild(int newCapacity, SlotFilter keep) throws IOException {
+        int oldCapacity = maskOf(buffer) + 1;
+        int size = 0;
+        int safe = 0;
+
+        Path scratch = path.resolveSibling(path.getFileName() + ".grow");
+        try (FileChannel out = FileChannel.open(scratch, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer old = buffer;
+            ByteBuffer slot = ByteBuffer.allocate(SLOT_BYTES);
+            for (int i = 0; i < oldCapacity; i++) {
+                int offset = slotOffset(i);
+                byte flags = old.get(offset + S_FLAGS);
+                if ((flags & FLAG_OCCUPIED) == 0) continue;
+                if (!keep.keep((byte) (flags & ~FLAG_OCCUPIED), old.getInt(offset + S_ACCESSED),
+                        old.getLong(offset + S_TIMESTAMP))) continue;
+
+                size++;
+                if ((flags & FLAG_SAFE) != 0) safe++;
+                slot.clear();
+                slot.put(old.slice(offset, SLOT_BYTES));
+                slot.flip();
+                while (slot.hasRemaining()) out.write(slot);
+            }
+
+            if (newCapacity != oldCapacity) map(newCapacity);
+            MappedByteBuffer buf = buffer;
+            int mask = maskOf(buf);
+            for (int offset = HEADER_BYTES; offset < buf.capacity(); offset += SLOT_BYTES) {
+                buf.put(offset + S_FLAGS, (byte) 0);
+            }
+            buf.putInt(H_CAPACITY, newCapacity);
+
+            out.position(0);
+            byte[] raw = new byte[SLOT_BYTES];
+            ByteBuffer in = ByteBuffer.wrap(raw);
+            while (true) {
+                in.clear();
+                while (in.hasRemaining()) {
+                    if (out.read(in) < 0) break;
+                }
+                if (in.position() < SLOT_BYTES) break;
+
+                long a = in.getLong(0);
+                int target = (int) a & mask;
+                while ((buf.get(slotOffset(target) + S_FLAGS) & FLAG_OCCUPIED) != 0) {
+                    target = (target + 1) & mask;
+                }
+                buf.put(slotOffset(target), raw);
+            }
+            buf.putInt(H_SIZE, size);
+            buf.putInt(H_SAFE, safe);
+        } finally {
+            Files.deleteIfExists(scratch);
+        }
+    }
+
+    private void map(int capacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+    }
+
+    // Derived from the mapping itself so a reader holding an older buffer never indexes past it
+    private static int maskOf(MappedByteBuffer buf) {
+        return (buf.capacity() - HEADER_BYTES) / SLOT_BYTES - 1;
+    }
+
+    private static long fileSize(int capacity) {
+        return HEADER_BYTES + (long) capacity * SLOT_BYTES;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+}
@@ -0,0 +1,238 @@
+package dev.hybridious.utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only binary log of map verdicts.
+ *
+ * Every verdict is a fixed 45-byte record (32-byte SHA-256 digest, flags, float confidence,
+ * long timestamp) appended to the end of the file, so persisting one verdict is O(1) I/O.
+ * The last record for a digest wins on replay. {@link #compact} rewrites the file with only
+ * the live records once superseded ones pile up.
+ */
+public class MapVerdictJournal implements Closeable {
+    public static final int DIGEST_BYTES = 32;
+    public static final int RECORD_BYTES = DIGEST_BYTES + 1 + 4 + 8;
+
+    public static final byte FLAG_SAFE = 0x01;
+    public static final byte FLAG_MANUAL = 0x02;
+    // Blocked as a near-duplicate of a blocked map rather than by the classifier
+    public static final byte FLAG_PERCEPTUAL = 0x04;
+
+    private static final int MAGIC = 0x484D564A; // "HMVJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+
+    private final Path path;
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_BYTES);
+    private FileChannel channel;
+    private long recordCount;
+
+    public interface RecordVisitor {
+        void accept(byte[] digest, byte flags, float confidence, long timestamp);
+    }
+
+    public interface RecordSource {
+        void forEach(RecordVisitor visitor);
+    }
+
+    public MapVerdictJournal(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    /**
+     * Open the journal for appending, creating it if needed. A torn record left by a crash
+     * mid-append is truncated away.
+     */
+    public synchronized void open() throws IOException {
+        if (channel != null) return;
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_BYTES) {
+            channel.truncate(0);
+            writeHeader(channel);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                channel.close();
+                channel = null;
+                throw new IOException("Not a verdict journal: " + path.getFileName());
+            }
+        }
+
+        long body = channel.size() - HEADER_BYTES;
+        recordCount = body / RECORD_BYTES;
+        long validSize = HEADER_BYTES + recordCount * RECORD_BYTES;
+        if (validSize != channel.size()) {
+            channel.truncate(validSize);
+        }
+        channel.position(validSize);
+    }
+
+    /**
+     * Stream every record in file order to the visitor.
+     */
+    public synchronized void replay(RecordVisitor visitor) throws IOException {
+        if (!Files.exists(path)) return;
+
+        try (InputStream in = Files.newInputStream(path);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in, 64 * 1024))) {
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                throw new IOException("Not a verdict journal: " + path.getFileName());
+            }
+
+            byte[] digest = new byte[DIGEST_BYTES];
+            while (true) {
+                try {
+                    data.readFully(digest);
+                    byte flags = data.readByte();
+                    float confidence = data.readFloat();
+                    long timestamp = data.readLong();
+                    visitor.accept(digest, flags, confidence, timestamp);
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Append a single record. The digest array is copied, so callers may reuse it.
+     */
+    public synchronized void append(byte[] digest, byte flags, float confidence, long timestamp) throws IOException {
+        if (digest == null || digest.length != DIGEST_BYTES) {
+            throw new IllegalArgumentException("Digest must be " + DIGEST_BYTES + " bytes");
+        }
+        if (channel == null) open();
+
+        recordBuffer.clear();
+        recordBuffer.put(digest).put(flags).putFloat(confidence).putLong(timestamp);
+        recordBuffer.flip();
+        while (recordBuffer.hasRemaining()) {
+            channel.write(recordBuffer);
+        }
+        recordCount++;
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Rewrite the journal so it only holds the records produced by {@code live}.
+     *
+     * The live snapshot is written to a temp file without holding the journal lock. Records
+     * appended while that happens are copied over from the old file before the atomic swap,
+     * so no verdict is lost to a concurrent {@link #append}.
+     */
+    public void compact(RecordSource live) throws IOException {
+        long snapshotRecords;
+        synchronized (this) {
+            if (channel == null) open();
+            snapshotRecords = recordCount;
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(out);
+            ByteBuffer chunk = ByteBuffer.allocate(RECORD_BYTES * 512);
+            IOException[] failure = new IOException[1];
+            live.forEach((digest, flags, confidence, timestamp) -> {
+                if (failure[0] != null) return;
+                try {
+                    if (chunk.remaining() < RECORD_BYTES) {
+                        drain(chunk, out);
+                    }
+                    chunk.put(digest, 0, DIGEST_BYTES).put(flags).putFloat(confidence).putLong(timestamp);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+            drain(chunk, out);
+
+            synchronized (this) {
+                long tailStart = HEADER_BYTES + snapshotRecords * RECORD_BYTES;
+                long tailBytes = recordCount * RECORD_BYTES - snapshotRecords * RECORD_BYTES;
+                long copied = 0;
+                while (copied < tailBytes) {
+                    copied += channel.transferTo(tailStart + copied, tailBytes - copied, out);
+                }
+                out.force(false);
+
+                long newCount = (out.size() - HEADER_BYTES) / RECORD_BYTES;
+                channel.close();
+                channel = null;
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                open();
+                recordCount = newCount;
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Close and remove the journal file.
+     */
+    public synchronized void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+        recordCount = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header, header.position());
+        }
+        out.position(HEADER_BYTES);
+    }
+
+    private static void drain(ByteBuffer chunk, FileChannel out) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            out.write(chunk);
+        }
+        chunk.clear();
+    }
+}
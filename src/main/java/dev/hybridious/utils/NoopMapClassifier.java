@@ -0,0 +1,26 @@
+package dev.hybridious.utils;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+
+/**
+ * Engine that classifies nothing. Only hash cache and manual verdicts apply, so unknown maps
+ * stay blocked. Also serves as a baseline when benchmarking the rest of the pipeline.
+ */
+public class NoopMapClassifier implements MapClassifier {
+
+    @Override
+    public String name() {
+        return "none";
+    }
+
+    @Override
+    public Map<Integer, Result> classify(Map<Integer, byte[]> maps, Double threshold) {
+        return Map.of();
+    }
+
+    @Override
+    public Result classifyImage(BufferedImage image, Double threshold) {
+        return null;
+    }
+}
@@ -0,0 +1,204 @@
+package dev.hybridious.utils;
+
+import java.util.Arrays;
+
+/**
+ * Finds every pair of points within a radius of each other in linear time, for scans over
+ * thousands of entities that an all-pairs check can't keep up with.
+ *
+ * Points are bucketed into cubic cells one radius wide, so a close pair is always in the same
+ * or an adjacent cell. Each point is compared with the rest of its own cell and with 13 of its
+ * 26 neighbours (the half that sorts after it), which visits every pair once. A cell is a long
+ * key packing its coordinates relative to the scan's lowest cell, so a neighbour is the key plus
+ * a constant. Cells live in an open-addressing table of chain heads over parallel arrays, reused
+ * between scans, so a scan allocates nothing once the arrays have grown to the entity count.
+ */
+public final class UniformGrid {
+    @FunctionalInterface
+    public interface PairVisitor {
+        /**
+         * @param first      index of the point added first
+         * @param second     index of the point added later
+         * @param distanceSq squared distance between them
+         */
+        void visit(int first, int second, double distanceSq);
+    }
+
+    // Bits per axis in a cell key; coordinates are offset by one so neighbours never go negative
+    private static final int AXIS_BITS = 21;
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+    private static final long[] FORWARD_NEIGHBOURS = forwardNeighbours();
+    private static final long EMPTY = -1;
+
+    private double radius = 1;
+    private int count;
+    private double[] x = new double[64];
+    private double[] y = new double[64];
+    private double[] z = new double[64];
+    private long[] cells = new long[64];
+    // Next point in the same cell, or -1
+    private int[] next = new int[64];
+    // Slot -> cell key, or EMPTY, and the newest point in that cell
+    private long[] slotCells = new long[128];
+    private int[] heads = new int[128];
+    // One bit per hash value (8 per slot): most neighbour cells are empty, and this says so from L1
+    private long[] occupied = new long[16];
+
+    /**
+     * Start a new scan with cells this wide, which is also the pair radius
+     */
+    public void reset(double radius) {
+        if (!(radius > 0)) throw new IllegalArgumentException("Radius must be positive: " + radius);
+        this.radius = radius;
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the point's index, passed back to the {@link PairVisitor}
+     */
+    public int add(double px, double py, double pz) {
+        if (count == x.length) grow();
+        int i = count++;
+        x[i] = px;
+        y[i] = py;
+        z[i] = pz;
+        return i;
+    }
+
+    /**
+     * Visit every pair of added points at most the radius apart, each pair once
+     */
+    public void forEachPairWithin(PairVisitor visitor) {
+        if (count < 2) return;
+        index();
+
+        double radiusSq = radius * radius;
+        for (int i = 0; i < count; i++) {
+            // Own cell: the chain runs from newest to oldest, so what follows i was added before it
+            for (int j = next[i]; j >= 0; j = next[j]) {
+                visitIfClose(j, i, radiusSq, visitor);
+            }
+
+            long cell = cells[i];
+            for (long offset : FORWARD_NEIGHBOURS) {
+                for (int j = find(cell + offset); j >= 0; j = next[j]) {
+                    if (j < i) visitIfClose(j, i, radiusSq, visitor);
+                    else visitIfClose(i, j, radiusSq, visitor);
+                }
+            }
+        }
+    }
+
+    private void visitIfClose(int first, int second, double radiusSq, PairVisitor visitor) {
+        double dx = x[first] - x[second];
+        double dy = y[first] - y[second];
+        double dz = z[first] - z[second];
+        double distanceSq = dx * dx + dy * dy + dz * dz;
+        if (distanceSq <= radiusSq) visitor.visit(first, second, distanceSq);
+    }
+
+    /**
+     * Key every point's cell and chain it into the cell's slot
+     */
+    private void index() {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+        // Cells wider than the radius are still correct, just slower; only a spread far beyond
+        // render distance needs them to fit the key
+        double span = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ));
+        double cellSize = Math.max(radius, span / (AXIS_MASK - 3));
+        double inverse = 1 / cellSize;
+
+        int capacity = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+        if (heads.length < capacity) {
+            heads = new int[capacity];
+            slotCells = new long[capacity];
+            occupied = new long[capacity / 8];
+        }
+        Arrays.fill(slotCells, EMPTY);
+        Arrays.fill(occupied, 0);
+
+        int mask = heads.length - 1;
+        for (int i = 0; i < count; i++) {
+            long cell = (((long) ((x[i] - minX) * inverse) + 1) << (2 * AXIS_BITS))
+                    | (((long) ((y[i] - minY) * inverse) + 1) << AXIS_BITS)
+                    | ((long) ((z[i] - minZ) * inverse) + 1);
+            cells[i] = cell;
+
+            int hash = hash(cell);
+            occupied[(hash >>> 6) & (occupied.length - 1)] |= 1L << hash;
+            int slot = hash & mask;
+            while (slotCells[slot] != EMPTY && slotCells[slot] != cell) {
+                slot = (slot + 1) & mask;
+            }
+            next[i] = slotCells[slot] == EMPTY ? -1 : heads[slot];
+            slotCells[slot] = cell;
+            heads[slot] = i;
+        }
+    }
+
+    /**
+     * @return the newest point in the cell, or -1 if it is empty
+     */
+    private int find(long cell) {
+        int hash = hash(cell);
+        if ((occupied[(hash >>> 6) & (occupied.length - 1)] & (1L << hash)) == 0) return -1;
+
+        int mask = heads.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            long key = slotCells[slot];
+            if (key == cell) return heads[slot];
+            if (key == EMPTY) return -1;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Scatters x and y but keeps z, so cells along z (neighbours, and rails) share cache lines
+     */
+    private static int hash(long cell) {
+        int cx = (int) (cell >>> (2 * AXIS_BITS));
+        int cy = (int) (cell >>> AXIS_BITS) & (int) AXIS_MASK;
+        return (int) (cell & AXIS_MASK) + cy * 0x9E3779B1 + cx * 0x85EBCA77;
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        cells = Arrays.copyOf(cells, capacity);
+        next = Arrays.copyOf(next, capacity);
+    }
+
+    /**
+     * Key deltas of the 13 neighbour cells that sort after the cell itself
+     */
+    private static long[] forwardNeighbours() {
+        long[] offsets = new long[13];
+        int n = 0;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if (dx > 0 || (dx == 0 && (dy > 0 || (dy == 0 && dz > 0)))) {
+                        offsets[n++] = ((long) dx << (2 * AXIS_BITS)) + ((long) dy << AXIS_BITS) + dz;
+                    }
+                }
+            }
+        }
+        return offsets;
+    }
+}